@@ -1,7 +1,9 @@
 set storage_engine = INNODB;
 
+DROP TABLE IF EXISTS PlacesRestantes;
 DROP TABLE IF EXISTS PlaceReservee;
 DROP TABLE IF EXISTS Reservation;
+DROP TABLE IF EXISTS BlocReservation;
 DROP TABLE IF EXISTS Voiture;
 DROP TABLE IF EXISTS TypeVoiture;
 DROP TABLE IF EXISTS Classe;
@@ -101,9 +103,21 @@ CREATE TABLE Reservation (
     prixReservation REAL UNSIGNED NOT NULL,
     gareDepart VARCHAR(30) NOT NULL,
     gareArrivee VARCHAR(30) NOT NULL,
+    numeroTrain INT UNSIGNED NOT NULL,
+    dateVoyage DATE NOT NULL,								-- Jour de dateHeureDepart
+    rangDebut INT UNSIGNED NOT NULL,						-- Rang du premier segment du trajet
+    rangFin INT UNSIGNED NOT NULL,							-- Rang du dernier segment du trajet
     PRIMARY KEY (idReservation),
 	FOREIGN KEY (gareDepart) REFERENCES Gare(nomGare) ON UPDATE CASCADE,
-    FOREIGN KEY (gareArrivee) REFERENCES Gare(nomGare) ON UPDATE CASCADE
+    FOREIGN KEY (gareArrivee) REFERENCES Gare(nomGare) ON UPDATE CASCADE,
+    FOREIGN KEY (numeroTrain) REFERENCES Train(numeroTrain) ON UPDATE CASCADE,
+    INDEX (numeroTrain, dateVoyage),						-- Reservations d'un train un jour donne
+    INDEX (dateVoyage)										-- Reservations d'une plage de jours
+);
+
+CREATE TABLE BlocReservation (							-- Blocs d'identifiants de reservation attribues aux applications
+	numeroBloc INT UNSIGNED AUTO_INCREMENT,
+    PRIMARY KEY (numeroBloc)
 );
 
 CREATE TABLE PlaceReservee (
@@ -117,6 +131,16 @@ CREATE TABLE PlaceReservee (
     PRIMARY KEY (numeroPlace, idReservation, numeroVoiture, numeroTrain, couleurPeriode)
 );
 
+CREATE TABLE PlacesRestantes (							-- Places restantes par train, jour, classe et segment (compteurs crees au premier usage)
+	numeroTrain INT UNSIGNED,
+    dateVoyage DATE,
+    nomClasse ENUM('premiere', 'seconde', 'bar'),
+    rang INT UNSIGNED,									-- Rang du segment dans le parcourt du train
+    places INT NOT NULL,
+	FOREIGN KEY (numeroTrain) REFERENCES Train(numeroTrain) ON DELETE CASCADE ON UPDATE CASCADE,
+    PRIMARY KEY (numeroTrain, dateVoyage, nomClasse, rang)
+);
+
 -- 
 -- Section 2: Database Population 
 -- 
@@ -274,7 +298,7 @@ INSERT INTO Voiture VALUES
     (18, 6632, 'rouge', 'double', 'seconde');
         
 INSERT INTO Reservation VALUES
-	('ABCDEF', 'jane.smith@gmail.com', '2017-10-29 10:00:00', 324.615, 'Lyon', 'Avignon');
+	('ABCDEF', 'jane.smith@gmail.com', '2017-10-29 10:00:00', 324.615, 'Lyon', 'Avignon', 6607, '2017-10-29', 2, 2);
     
 INSERT INTO PlaceReservee VALUES
 	(21, 'ABCDEF', 2, 6607, 'rouge'),
@@ -0,0 +1,275 @@
+package model;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the operations of a {@link DataAccess} asynchronously: each method
+ * returns at once a future completed with the result of the operation, or
+ * completed exceptionally with its {@link DataAccessException}.
+ * <p>
+ * By default, the operations run on as many daemon threads as the data
+ * access object has connections, so that no thread ever waits for a
+ * connection. Any other executor can be given instead, e.g. one starting a
+ * virtual thread per operation on a JVM that has them. Either way, at most
+ * <code>maxPending</code> operations are admitted at once: beyond, the
+ * calling thread waits for one to complete, and the future of the new
+ * operation fails if none completes in time. This is the back-pressure that
+ * keeps a saturated pool from queuing work without bound.
+ */
+public class AsyncDataAccess implements AutoCloseable {
+
+    //
+    // CONSTANTS
+    //
+    // default number of operations admitted at once, per connection
+    public static final int DEFAULT_PENDING_PER_CONNECTION = 4;
+    // default time a caller waits for an operation to be admitted
+    public static final long DEFAULT_ADMISSION_TIMEOUT_MILLIS = 30 * 1000L;
+
+    //
+    // HELPER CLASSES
+    //
+    /**
+     * An operation of the data access object.
+     */
+    private interface Operation<T> {
+
+        T run() throws DataAccessException;
+    }
+
+    //
+    // FIELDS
+    //
+    private final DataAccess data;
+    private final Executor executor;
+    // the executor created by this object, shut down on close
+    private final ExecutorService ownExecutor;
+    private final Semaphore admissions;
+    private final int maxPending;
+    private final long admissionTimeoutMillis;
+
+    // statistics
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    //
+    // CONSTRUCTORS
+    //
+    /**
+     * Creates a new asynchronous access running the operations of the
+     * specified object on its own threads, one per connection of the object.
+     *
+     * @param data the data access object, pooled to run several operations at
+     * once
+     */
+    public AsyncDataAccess(DataAccess data) {
+        this(data, null, data.getConcurrency() * DEFAULT_PENDING_PER_CONNECTION, DEFAULT_ADMISSION_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a new asynchronous access running the operations of the
+     * specified object on the specified executor.
+     *
+     * @param data the data access object, pooled to run several operations at
+     * once
+     * @param executor the executor to run the operations on, <code>null</code>
+     * for threads of this object, one per connection of the data access object
+     * @param maxPending the maximum number of operations admitted at once,
+     * running or waiting to run
+     * @param admissionTimeoutMillis the maximum time a caller waits for an
+     * operation to be admitted
+     */
+    public AsyncDataAccess(DataAccess data, Executor executor, int maxPending, long admissionTimeoutMillis) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("maximum number of pending operations must be positive: " + maxPending);
+        }
+        this.data = data;
+        if (executor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            int size = data.getConcurrency();
+            this.ownExecutor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), runnable -> {
+                    Thread thread = new Thread(runnable, "data-access-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            this.executor = ownExecutor;
+        } else {
+            this.ownExecutor = null;
+            this.executor = executor;
+        }
+        this.admissions = new Semaphore(maxPending);
+        this.maxPending = maxPending;
+        this.admissionTimeoutMillis = admissionTimeoutMillis;
+    }
+
+    //
+    // METHODS
+    //
+    /**
+     * See {@link DataAccess#getTrainTimes(String, String, Date, Date)}.
+     */
+    public CompletableFuture<List<Journey>> getTrainTimes(String departureStation, String arrivalStation, Date fromDate, Date toDate) {
+        return submit(() -> data.getTrainTimes(departureStation, arrivalStation, fromDate, toDate));
+    }
+
+    /**
+     * See {@link DataAccess#getItineraries}.
+     */
+    public CompletableFuture<List<Itinerary>> getItineraries(String departureStation, String arrivalStation, Date fromDate, Date toDate, int maxTransfers) {
+        return submit(() -> data.getItineraries(departureStation, arrivalStation, fromDate, toDate, maxTransfers));
+    }
+
+    /**
+     * See {@link DataAccess#buyTicket(String, String, Period, int, Class)}.
+     */
+    public CompletableFuture<Ticket> buyTicket(String departureStation, String arrivalStation, Period travelPeriod, int passengerCount, Class travelClass) {
+        return submit(() -> data.buyTicket(departureStation, arrivalStation, travelPeriod, passengerCount, travelClass));
+    }
+
+    /**
+     * See {@link DataAccess#quoteTickets}.
+     */
+    public CompletableFuture<List<Ticket>> quoteTickets(List<FareRequest> requests) {
+        return submit(() -> data.quoteTickets(requests));
+    }
+
+    /**
+     * See {@link DataAccess#buyTicketAndBook}.
+     */
+    public CompletableFuture<Booking> buyTicketAndBook(int trainNumber, Date departureDate, String departureStation, String arrivalStation, int passengerCount, Class travelClass, String customerEmail) {
+        return submit(() -> data.buyTicketAndBook(trainNumber, departureDate, departureStation, arrivalStation, passengerCount, travelClass, customerEmail));
+    }
+
+    /**
+     * See {@link DataAccess#holdSeats}.
+     */
+    public CompletableFuture<SeatHold> holdSeats(int trainNumber, Date departureDate, String departureStation, String arrivalStation, int passengerCount, Class travelClass, String customerEmail) {
+        return submit(() -> data.holdSeats(trainNumber, departureDate, departureStation, arrivalStation, passengerCount, travelClass, customerEmail));
+    }
+
+    /**
+     * See {@link DataAccess#confirmHold}.
+     */
+    public CompletableFuture<Booking> confirmHold(String holdId) {
+        return submit(() -> data.confirmHold(holdId));
+    }
+
+    /**
+     * See {@link DataAccess#cancelBooking}.
+     */
+    public CompletableFuture<Boolean> cancelBooking(String bookingID, String customerEmail) {
+        return submit(() -> data.cancelBooking(bookingID, customerEmail));
+    }
+
+    /**
+     * See {@link DataAccess#getAvailableSeats(int, Date, String, String)}.
+     */
+    public CompletableFuture<List<Seat>> getAvailableSeats(int trainNumber, Date departureDate, String beginStation, String endStation) {
+        return submit(() -> data.getAvailableSeats(trainNumber, departureDate, beginStation, endStation));
+    }
+
+    /**
+     * See {@link DataAccess#getAvailableSeatCount}.
+     */
+    public CompletableFuture<Integer> getAvailableSeatCount(int trainNumber, Date departureDate, String beginStation, String endStation, Class travelClass) {
+        return submit(() -> data.getAvailableSeatCount(trainNumber, departureDate, beginStation, endStation, travelClass));
+    }
+
+    /**
+     * See {@link DataAccess#getAvailableSeatCounts}.
+     */
+    public CompletableFuture<int[]> getAvailableSeatCounts(List<Journey> journeys, Class travelClass) {
+        return submit(() -> data.getAvailableSeatCounts(journeys, travelClass));
+    }
+
+    /**
+     * See {@link DataAccess#getAvailabilityMatrix}.
+     */
+    public CompletableFuture<AvailabilityMatrix> getAvailabilityMatrix(int trainNumber, Date departureDate) {
+        return submit(() -> data.getAvailabilityMatrix(trainNumber, departureDate));
+    }
+
+    /**
+     * Returns the statistics of the data access object, plus the ones of this
+     * object (<code>async.*</code>).
+     *
+     * @return the statistics, by name
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = data.getStatistics();
+        statistics.put("async.submitted", submittedCount.get());
+        statistics.put("async.rejected", rejectedCount.get());
+        statistics.put("async.failed", failedCount.get());
+        statistics.put("async.pending", (long) (maxPending - admissions.availablePermits()));
+        return statistics;
+    }
+
+    /**
+     * Stops the threads of this object once the admitted operations are done.
+     * The data access object is left open, and a given executor is left
+     * running.
+     */
+    @Override
+    public void close() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Admits an operation, waiting for a pending one to complete if needed, and
+     * runs it on the executor.
+     *
+     * @param operation the operation
+     *
+     * @return the future result of the operation
+     */
+    private <T> CompletableFuture<T> submit(Operation<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            if (!admissions.tryAcquire(admissionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                rejectedCount.incrementAndGet();
+                future.completeExceptionally(new DataAccessException("Too many pending operations: " + maxPending));
+                return future;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejectedCount.incrementAndGet();
+            future.completeExceptionally(new DataAccessException("Interrupted while waiting for admission"));
+            return future;
+        }
+        submittedCount.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(operation.run());
+                } catch (Throwable e) {
+                    failedCount.incrementAndGet();
+                    future.completeExceptionally(e);
+                } finally {
+                    admissions.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            admissions.release();
+            rejectedCount.incrementAndGet();
+            future.completeExceptionally(new DataAccessException("Operation rejected: " + e.getMessage()));
+        }
+        return future;
+    }
+
+}
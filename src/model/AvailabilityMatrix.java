@@ -0,0 +1,128 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The number of available seats of a train on a given day between every two
+ * stations of its route, in each class.
+ * <p>
+ * The stations are in <code>rang</code> order and the counts of each class are
+ * packed in a single array: the pairs of stations (i, j), i &lt; j, are stored
+ * row after row, (0, 1), (0, 2), ..., (1, 2), ...
+ */
+public class AvailabilityMatrix {
+
+    private final int trainNumber;
+    private final Date departureDate;
+    private final List<String> stations;
+    // packed counts, by Class ordinal
+    private final int[][] counts;
+
+    public AvailabilityMatrix(int trainNumber, Date departureDate, String[] stations, int[][] counts) {
+        if (counts.length != Class.values().length) {
+            throw new IllegalArgumentException("one array of counts per class expected");
+        }
+        this.trainNumber = trainNumber;
+        this.departureDate = departureDate;
+        this.stations = Collections.unmodifiableList(Arrays.asList(stations.clone()));
+        this.counts = new int[counts.length][];
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i].length != size(stations.length)) {
+                throw new IllegalArgumentException("one count per pair of stations expected");
+            }
+            this.counts[i] = counts[i].clone();
+        }
+    }
+
+    /**
+     * Returns the number of pairs of stations of a route of the specified
+     * number of stations, i.e. the length of the packed arrays.
+     *
+     * @param stationCount the number of stations
+     *
+     * @return the number of pairs
+     */
+    public static int size(int stationCount) {
+        return stationCount * (stationCount - 1) / 2;
+    }
+
+    /**
+     * Returns the position of the specified pair of stations in the packed
+     * arrays.
+     *
+     * @param stationCount the number of stations
+     * @param from the index of the departure station
+     * @param to the index of the arrival station, after the departure one
+     *
+     * @return the position
+     */
+    public static int indexOf(int stationCount, int from, int to) {
+        return from * (2 * stationCount - from - 1) / 2 + (to - from - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "AvailabilityMatrix{" + "trainNumber=" + trainNumber + ", departureDate=" + departureDate + ", stations=" + stations + '}';
+    }
+
+    public int getTrainNumber() {
+        return trainNumber;
+    }
+
+    public Date getDepartureDate() {
+        return departureDate;
+    }
+
+    public List<String> getStations() {
+        return stations;
+    }
+
+    /**
+     * Returns the number of available seats of the specified class between the
+     * stations at the specified indexes.
+     *
+     * @param from the index of the departure station
+     * @param to the index of the arrival station, after the departure one
+     * @param travelClass the class
+     *
+     * @return the number of seats
+     */
+    public int getAvailableSeatCount(int from, int to, Class travelClass) {
+        if (from < 0 || to <= from || to >= stations.size()) {
+            throw new IndexOutOfBoundsException("no such pair of stations: " + from + ", " + to);
+        }
+        return counts[travelClass.ordinal()][indexOf(stations.size(), from, to)];
+    }
+
+    /**
+     * Returns the number of available seats of the specified class between the
+     * specified stations.
+     *
+     * @param departureStation the departure station
+     * @param arrivalStation the arrival station
+     * @param travelClass the class
+     *
+     * @return the number of seats, 0 if the train does not serve the stations
+     * in that order
+     */
+    public int getAvailableSeatCount(String departureStation, String arrivalStation, Class travelClass) {
+        int from = stations.indexOf(departureStation);
+        int to = stations.indexOf(arrivalStation);
+        return (from >= 0 && to > from) ? getAvailableSeatCount(from, to, travelClass) : 0;
+    }
+
+    /**
+     * Returns the packed counts of the specified class.
+     *
+     * @param travelClass the class
+     *
+     * @return the counts, a new array
+     */
+    public int[] getCounts(Class travelClass) {
+        return counts[travelClass.ordinal()].clone();
+    }
+
+}
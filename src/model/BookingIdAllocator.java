@@ -0,0 +1,160 @@
+package model;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Allocates booking IDs, i.e. the 6 upper-case letters stored in
+ * <code>Reservation.idReservation</code>, without querying the database for
+ * each booking.
+ * <p>
+ * The allocator reserves blocks of consecutive sequence numbers by inserting a
+ * row into the <code>BlocReservation</code> table, whose AUTO_INCREMENT key is
+ * the block number. InnoDB never hands out the same AUTO_INCREMENT value
+ * twice, even when the inserting transaction rolls back, and does not keep it
+ * locked until commit, so every JVM gets its own blocks. Within a block, IDs
+ * are computed in memory: each sequence number is scrambled by a bijection
+ * over the 26^6 possible IDs, so that consecutive bookings do not get
+ * consecutive IDs, and then written in base 26.
+ * <p>
+ * IDs created before the allocator existed may still collide with allocated
+ * ones: callers must be ready to ask for another ID on a duplicate key.
+ */
+class BookingIdAllocator {
+
+    //
+    // CONSTANTS
+    //
+    // number of letters in an ID
+    static final int ID_LENGTH = 6;
+    // default number of IDs reserved at once
+    static final int DEFAULT_BLOCK_SIZE = 1000;
+    // number of distinct IDs: 26^6
+    private static final long ID_COUNT = 308915776L;
+    // scrambling bijection: x -> (x * MULTIPLIER + OFFSET) mod ID_COUNT,
+    // MULTIPLIER being coprime with ID_COUNT = 2^6 * 13^6
+    private static final long MULTIPLIER = 130721483L;
+    private static final long OFFSET = 77230139L;
+
+    //
+    // FIELDS
+    //
+    private final int blockSize;
+
+    // next sequence number to hand out, and end of the current block (excluded)
+    private long next = 0;
+    private long limit = 0;
+
+    // statistics, guarded by this
+    private long allocatedCount = 0;
+    private long blockCount = 0;
+    private long collisionCount = 0;
+    private long allocationNanos = 0;
+
+    //
+    // CONSTRUCTORS
+    //
+    /**
+     * Creates a new allocator reserving the specified number of IDs at once.
+     *
+     * @param blockSize the number of IDs per block
+     */
+    BookingIdAllocator(int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+
+    //
+    // METHODS
+    //
+    /**
+     * Returns a new booking ID. A database round trip is needed only when the
+     * current block is exhausted, once every <code>blockSize</code> calls.
+     *
+     * @param statements the statements of the connection to reserve a new
+     * block with, if needed
+     *
+     * @return the ID
+     *
+     * @throws SQLException if a new block could not be reserved
+     */
+    synchronized String next(StatementCache statements) throws SQLException {
+        long start = System.nanoTime();
+        if (next >= limit) {
+            long block = reserveBlock(statements);
+            next = block * blockSize;
+            limit = next + blockSize;
+            blockCount += 1;
+        }
+        String id = format(scramble(next % ID_COUNT));
+        next += 1;
+        allocatedCount += 1;
+        allocationNanos += System.nanoTime() - start;
+        return id;
+    }
+
+    /**
+     * Records that an allocated ID was already used by an existing booking.
+     */
+    synchronized void collided() {
+        collisionCount += 1;
+    }
+
+    /**
+     * Forgets the current block, e.g. after the database has been created
+     * again and the block numbers restart from the beginning.
+     */
+    synchronized void reset() {
+        next = 0;
+        limit = 0;
+    }
+
+    /**
+     * Adds the allocator statistics to the specified map.
+     *
+     * @param statistics the map to fill in
+     */
+    synchronized void collectStatistics(Map<String, Long> statistics) {
+        statistics.put("bookingIds.allocated", allocatedCount);
+        statistics.put("bookingIds.blocks", blockCount);
+        statistics.put("bookingIds.collisions", collisionCount);
+        statistics.put("bookingIds.allocation.avg.ns",
+            allocatedCount == 0 ? 0L : allocationNanos / allocatedCount);
+    }
+
+    /**
+     * Reserves a new block and returns its number.
+     */
+    private static long reserveBlock(StatementCache statements) throws SQLException {
+        statements.prepare("INSERT INTO BlocReservation VALUES (NULL)").executeUpdate();
+        try (ResultSet result = statements.prepare("SELECT LAST_INSERT_ID()").executeQuery()) {
+            if (!result.next()) {
+                throw new SQLException("no booking ID block was reserved");
+            }
+            return result.getLong(1);
+        }
+    }
+
+    /**
+     * Maps a sequence number to a seemingly random one, without collision.
+     */
+    static long scramble(long sequence) {
+        return (sequence * MULTIPLIER + OFFSET) % ID_COUNT;
+    }
+
+    /**
+     * Writes the specified number in base 26, using the letters A to Z.
+     */
+    static String format(long value) {
+        char[] letters = new char[ID_LENGTH];
+        for (int i = ID_LENGTH - 1; i >= 0; i--) {
+            letters[i] = (char) ('A' + (int) (value % 26));
+            value /= 26;
+        }
+        return new String(letters);
+    }
+
+}
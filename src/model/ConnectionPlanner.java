@@ -0,0 +1,301 @@
+package model;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans journeys with changes of train over the timetables of a range of
+ * days, entirely in memory.
+ * <p>
+ * The timetables are expanded into elementary connections, i.e. a train
+ * leaving a station at a given instant and reaching the next one, sorted by
+ * departure. A query then scans them once per number of transfers, in the
+ * manner of the Connection Scan Algorithm run in RAPTOR-like rounds: round
+ * <code>k</code> finds the earliest arrival at every station with
+ * <code>k</code> transfers, changing trains only if the connection leaves at
+ * least the minimum transfer time after the arrival. The rounds yield the
+ * Pareto-optimal itineraries for arrival time versus number of transfers.
+ * Instances are immutable and may be shared by several threads.
+ */
+class ConnectionPlanner {
+
+    //
+    // CONSTANTS
+    //
+    // default minimum time between the arrival of a train and the departure of the next one
+    static final int DEFAULT_TRANSFER_SECONDS = 10 * 60;
+    // default bound of the number of transfers of an itinerary
+    static final int DEFAULT_MAX_TRANSFERS = 4;
+    private static final long NEVER = Long.MAX_VALUE;
+
+    //
+    // FIELDS
+    //
+    private final String[] stations;
+    private final Map<String, Integer> stationIds = new HashMap<String, Integer>();
+    // connections, sorted by departure: stations, instants and trip
+    private final int[] froms;
+    private final int[] tos;
+    private final long[] departures;
+    private final long[] arrivals;
+    private final int[] trips;
+    // train of each trip, i.e. of each departure of a train on a given day
+    private final int[] trains;
+    private final long transferMillis;
+
+    //
+    // CONSTRUCTORS
+    //
+    /**
+     * Creates a new planner for the departures of the specified range of
+     * days.
+     *
+     * @param timetables the timetables of the trains, for any period colour
+     * @param calendar the period calendar
+     * @param firstDay the first day, in days since the epoch
+     * @param lastDay the last day (included)
+     * @param transferSeconds the minimum transfer time, in seconds
+     */
+    ConnectionPlanner(Collection<TrainTimetable> timetables, PeriodCalendar calendar, long firstDay, long lastDay,
+        int transferSeconds) {
+        this.transferMillis = transferSeconds * 1000L;
+        ZoneId zone = ZoneId.systemDefault();
+        String[] periods = calendar.periodsFor(firstDay, lastDay);
+
+        // counting the trips and connections first, so as to fill primitive arrays
+        int tripCount = 0;
+        int connectionCount = 0;
+        for (long day = firstDay; day <= lastDay; day++) {
+            String period = periods[(int) (day - firstDay)];
+            for (TrainTimetable timetable : timetables) {
+                if (timetable.getPeriod().equals(period)) {
+                    tripCount += timetable.getDepartureCount();
+                    connectionCount += timetable.getDepartureCount() * (timetable.getStationCount() - 1);
+                }
+            }
+        }
+
+        if (connectionCount >= 1 << 24) {
+            throw new IllegalArgumentException("too many connections: " + connectionCount);
+        }
+        List<String> names = new ArrayList<String>();
+        int[] from = new int[connectionCount];
+        int[] to = new int[connectionCount];
+        long[] departure = new long[connectionCount];
+        long[] arrival = new long[connectionCount];
+        int[] trip = new int[connectionCount];
+        this.trains = new int[tripCount];
+        int t = 0;
+        int c = 0;
+        for (long day = firstDay; day <= lastDay; day++) {
+            String period = periods[(int) (day - firstDay)];
+            for (TrainTimetable timetable : timetables) {
+                if (!timetable.getPeriod().equals(period)) {
+                    continue;
+                }
+                for (int d = 0; d < timetable.getDepartureCount(); d++) {
+                    long start = TrainTimetable.departureMillis(day, timetable.getDeparture(d), zone);
+                    trains[t] = timetable.getTrain();
+                    for (int i = 0; i < timetable.getStationCount() - 1; i++) {
+                        from[c] = stationId(timetable.getStation(i), names);
+                        to[c] = stationId(timetable.getStation(i + 1), names);
+                        departure[c] = start + timetable.getOffset(i) * 1000L;
+                        arrival[c] = start + timetable.getOffset(i + 1) * 1000L;
+                        trip[c] = t;
+                        c++;
+                    }
+                    t++;
+                }
+            }
+        }
+        this.stations = names.toArray(new String[names.size()]);
+
+        // sorting by departure; the connections of a trip keep their order on ties
+        long base = connectionCount == 0 ? 0 : min(departure);
+        long[] keys = new long[connectionCount];
+        for (int i = 0; i < connectionCount; i++) {
+            keys[i] = ((departure[i] - base) << 24) | i;
+        }
+        Arrays.sort(keys);
+        this.froms = new int[connectionCount];
+        this.tos = new int[connectionCount];
+        this.departures = new long[connectionCount];
+        this.arrivals = new long[connectionCount];
+        this.trips = new int[connectionCount];
+        for (int i = 0; i < connectionCount; i++) {
+            int j = (int) (keys[i] & 0xFFFFFF);
+            froms[i] = from[j];
+            tos[i] = to[j];
+            departures[i] = departure[j];
+            arrivals[i] = arrival[j];
+            trips[i] = trip[j];
+        }
+    }
+
+    //
+    // METHODS
+    //
+    /**
+     * Returns the number of elementary connections of the planner.
+     *
+     * @return the number of connections
+     */
+    int size() {
+        return departures.length;
+    }
+
+    /**
+     * Returns the Pareto-optimal itineraries from a station to another
+     * leaving after <code>fromMillis</code> and arriving before
+     * <code>toMillis</code>: each itinerary arrives earlier than the ones with
+     * fewer transfers.
+     *
+     * @param departureStation the departure station
+     * @param arrivalStation the arrival station
+     * @param fromMillis the earliest departure instant (excluded)
+     * @param toMillis the latest arrival instant (excluded)
+     * @param maxTransfers the maximum number of transfers
+     *
+     * @return the itineraries, by increasing number of transfers, an empty
+     * list if none
+     */
+    List<Itinerary> itineraries(String departureStation, String arrivalStation, long fromMillis, long toMillis,
+        int maxTransfers) {
+        Integer origin = stationIds.get(departureStation);
+        Integer target = stationIds.get(arrivalStation);
+        if (origin == null || target == null || origin.equals(target)) {
+            return Collections.emptyList();
+        }
+
+        // earliest arrival at each station over the previous rounds, and the round it was reached in
+        long[] best = new long[stations.length];
+        int[] bestRound = new int[stations.length];
+        Arrays.fill(best, NEVER);
+        // per round: boarding and alighting connections reaching each station, round of the boarding station
+        List<int[]> roundBoardings = new ArrayList<int[]>();
+        List<int[]> roundAlightings = new ArrayList<int[]>();
+        List<int[]> roundPrevious = new ArrayList<int[]>();
+        int[] boarded = new int[trains.length];
+        int first = firstDepartureAfter(fromMillis);
+
+        List<Itinerary> itineraries = new ArrayList<Itinerary>();
+        for (int k = 0; k <= maxTransfers; k++) {
+            long[] arrival = new long[stations.length];
+            int[] boarding = new int[stations.length];
+            int[] alighting = new int[stations.length];
+            int[] previous = new int[stations.length];
+            Arrays.fill(arrival, NEVER);
+            Arrays.fill(boarded, -1);
+            boolean improved = false;
+            long bound = Math.min(best[target], toMillis);
+
+            for (int c = first; c < departures.length && departures[c] < bound; c++) {
+                int trip = trips[c];
+                if (boarded[trip] < 0) {
+                    // boarding at the origin in the first round only, or else after a transfer
+                    int station = froms[c];
+                    boolean reachable = (station == origin)
+                        ? k == 0
+                        : best[station] != NEVER && best[station] + transferMillis <= departures[c];
+                    if (!reachable) {
+                        continue;
+                    }
+                    boarded[trip] = c;
+                }
+                int station = tos[c];
+                if (arrivals[c] < arrival[station] && arrivals[c] < best[station]) {
+                    arrival[station] = arrivals[c];
+                    boarding[station] = boarded[trip];
+                    alighting[station] = c;
+                    previous[station] = bestRound[froms[boarded[trip]]];
+                    improved = true;
+                }
+            }
+            if (!improved) {
+                break;
+            }
+            roundBoardings.add(boarding);
+            roundAlightings.add(alighting);
+            roundPrevious.add(previous);
+            if (arrival[target] < toMillis) {
+                itineraries.add(itinerary(k, target, origin, roundBoardings, roundAlightings, roundPrevious));
+            }
+            for (int s = 0; s < stations.length; s++) {
+                if (arrival[s] < best[s]) {
+                    best[s] = arrival[s];
+                    bestRound[s] = k;
+                }
+            }
+        }
+        return itineraries;
+    }
+
+    /**
+     * Builds the itinerary reaching a station in a given round, walking the
+     * rounds backwards to the origin.
+     */
+    private Itinerary itinerary(int round, int station, int origin, List<int[]> boardings, List<int[]> alightings,
+        List<int[]> previous) {
+        List<Journey> legs = new ArrayList<Journey>();
+        int k = round;
+        int s = station;
+        while (true) {
+            int board = boardings.get(k)[s];
+            int alight = alightings.get(k)[s];
+            legs.add(new Journey(stations[froms[board]], stations[tos[alight]], trains[trips[board]],
+                new Date(departures[board]), new Date(arrivals[alight])));
+            if (froms[board] == origin) {
+                break;
+            }
+            int r = previous.get(k)[s];
+            s = froms[board];
+            k = r;
+        }
+        Collections.reverse(legs);
+        return new Itinerary(legs);
+    }
+
+    /**
+     * Returns the index of the first connection leaving after the specified
+     * instant.
+     */
+    private int firstDepartureAfter(long millis) {
+        int low = 0;
+        int high = departures.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (departures[middle] <= millis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int stationId(String station, List<String> names) {
+        Integer id = stationIds.get(station);
+        if (id == null) {
+            id = names.size();
+            names.add(station);
+            stationIds.put(station, id);
+        }
+        return id;
+    }
+
+    private static long min(long[] values) {
+        long min = NEVER;
+        for (long value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+}
@@ -0,0 +1,369 @@
+package model;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded pool of JDBC connections to a single database, shared by all the
+ * threads using a pooled {@link DataAccess}.
+ * <p>
+ * Connections are borrowed for the duration of one operation and given back
+ * afterwards. Idle connections are kept in LIFO order so that the most recently
+ * used ones are reused first, and the ones left idle for longer than the idle
+ * timeout are closed. A connection that has been idle for a while is validated
+ * before being handed out again.
+ */
+class ConnectionPool {
+
+    //
+    // CONSTANTS
+    //
+    // time after which an idle connection is closed
+    static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000L;
+    // maximum time a borrower waits for a connection before giving up
+    static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 30 * 1000L;
+    // idle time after which a connection is validated before being reused
+    private static final long VALIDATION_INTERVAL_MILLIS = 30 * 1000L;
+    // time allowed to the driver to validate a connection, in seconds
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    //
+    // HELPER CLASSES
+    //
+    /**
+     * A connection waiting in the pool, with the time it was given back.
+     */
+    private static class IdleConnection {
+
+        private final Connection connection;
+        private final long since;
+
+        IdleConnection(Connection connection, long since) {
+            this.connection = connection;
+            this.since = since;
+        }
+    }
+
+    //
+    // FIELDS
+    //
+    private final String url;
+    private final String login;
+    private final String password;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+
+    // idle connections, the most recently released first
+    private final Deque<IdleConnection> idle = new ArrayDeque<IdleConnection>();
+    // number of open connections, borrowed or idle
+    private int openCount = 0;
+    private boolean closed = false;
+
+    // statistics, guarded by this
+    private long borrowCount = 0;
+    private long waitCount = 0;
+    private long waitNanos = 0;
+    private long maxWaitNanos = 0;
+    private long timeoutCount = 0;
+    private long createdCount = 0;
+    private long evictedCount = 0;
+    private long invalidCount = 0;
+
+    //
+    // CONSTRUCTORS
+    //
+    /**
+     * Creates a new pool of at most <code>maxSize</code> connections to the
+     * specified database. No connection is opened until the first borrow.
+     *
+     * @param url the url of the database to connect to
+     * @param login the (application) login to use
+     * @param password the password
+     * @param maxSize the maximum number of open connections
+     * @param idleTimeoutMillis the time after which an idle connection is closed
+     * @param borrowTimeoutMillis the maximum time to wait for a connection
+     */
+    ConnectionPool(String url, String login, String password, int maxSize,
+        long idleTimeoutMillis, long borrowTimeoutMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("pool size must be positive: " + maxSize);
+        }
+        this.url = url;
+        this.login = login;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    //
+    // METHODS
+    //
+    /**
+     * Returns the maximum number of connections open at once.
+     *
+     * @return the size of the pool
+     */
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if none is idle
+     * and the pool is not full, or waiting for one to be released otherwise.
+     *
+     * @return a valid connection, which must be given back with
+     * {@link #release(Connection)}
+     *
+     * @throws SQLException if the pool is closed, if no connection became
+     * available in time, or if a new connection could not be opened
+     */
+    Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + borrowTimeoutMillis * 1000000L;
+        boolean waited = false;
+
+        while (true) {
+            IdleConnection candidate = null;
+            List<Connection> stale;
+            synchronized (this) {
+                stale = evictIdle(System.currentTimeMillis());
+                while (!closed && idle.isEmpty() && openCount >= maxSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeoutCount += 1;
+                        closeAll(stale);
+                        throw new SQLException("timed out waiting for a pooled connection ("
+                            + maxSize + " in use)");
+                    }
+                    waited = true;
+                    try {
+                        wait(remaining / 1000000L + 1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        closeAll(stale);
+                        throw new SQLException("interrupted while waiting for a pooled connection");
+                    }
+                }
+                if (closed) {
+                    closeAll(stale);
+                    throw new SQLException("connection pool is closed");
+                }
+                if (!idle.isEmpty()) {
+                    candidate = idle.pollFirst();
+                } else {
+                    openCount += 1;                 // reserve a slot for a new connection
+                }
+            }
+            closeAll(stale);
+
+            Connection connection;
+            if (candidate == null) {
+                connection = open();
+            } else if (!isValid(candidate)) {
+                discard(candidate.connection, true);
+                continue;                           // try another one
+            } else {
+                connection = candidate.connection;
+            }
+
+            recordBorrow(System.nanoTime() - start, waited);
+            return connection;
+        }
+    }
+
+    /**
+     * Gives a borrowed connection back to the pool. A transaction the caller
+     * left open, e.g. because of an unexpected exception, is rolled back, and
+     * the connection is discarded if it cannot be. The connection is put back
+     * read-write and in auto-commit mode, so that neither the work nor the
+     * mode of an operation ever leaks into the next one.
+     *
+     * @param connection the connection to give back
+     */
+    void release(Connection connection) {
+        boolean reusable;
+        try {
+            reusable = !connection.isClosed();
+            if (reusable) {
+                reset(connection);
+            }
+        } catch (SQLException e) {
+            reusable = false;
+        }
+        synchronized (this) {
+            if (reusable && !closed) {
+                idle.addFirst(new IdleConnection(connection, System.currentTimeMillis()));
+                notify();
+                return;
+            }
+        }
+        discard(connection, false);
+    }
+
+    /**
+     * Puts a connection back to the state of a new one: no transaction open,
+     * read-write and in auto-commit mode. Any open transaction is rolled back
+     * first, since switching to auto-commit mode would commit it. The driver
+     * keeps both flags locally, so a connection already in auto-commit mode
+     * costs no round trip.
+     *
+     * @param connection the connection
+     *
+     * @throws SQLException if the connection cannot be reset, e.g. if the
+     * open transaction cannot be rolled back
+     */
+    static void reset(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        if (!autoCommit) {
+            connection.rollback();
+        }
+        if (connection.isReadOnly()) {
+            connection.setReadOnly(false);
+        }
+        if (!autoCommit) {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Closes all the idle connections and prevents further borrows. Borrowed
+     * connections are closed when they are released.
+     */
+    void close() {
+        List<Connection> toClose = new ArrayList<Connection>();
+        synchronized (this) {
+            closed = true;
+            for (IdleConnection c : idle) {
+                toClose.add(c.connection);
+            }
+            openCount -= idle.size();
+            idle.clear();
+            notifyAll();
+        }
+        closeAll(toClose);
+    }
+
+    /**
+     * Adds the pool statistics to the specified map.
+     *
+     * @param statistics the map to fill in
+     */
+    synchronized void collectStatistics(Map<String, Long> statistics) {
+        statistics.put("pool.size.max", (long) maxSize);
+        statistics.put("pool.size.open", (long) openCount);
+        statistics.put("pool.size.idle", (long) idle.size());
+        statistics.put("pool.borrows", borrowCount);
+        statistics.put("pool.waits", waitCount);
+        statistics.put("pool.wait.total.ms", waitNanos / 1000000L);
+        statistics.put("pool.wait.max.ms", maxWaitNanos / 1000000L);
+        statistics.put("pool.wait.avg.us", borrowCount == 0 ? 0L : waitNanos / borrowCount / 1000L);
+        statistics.put("pool.timeouts", timeoutCount);
+        statistics.put("pool.connections.created", createdCount);
+        statistics.put("pool.connections.evicted", evictedCount);
+        statistics.put("pool.connections.invalid", invalidCount);
+    }
+
+    /**
+     * Opens a new physical connection in a slot already reserved by the
+     * caller.
+     */
+    private Connection open() throws SQLException {
+        try {
+            Connection connection = DriverManager.getConnection(url, login, password);
+            synchronized (this) {
+                createdCount += 1;
+            }
+            return connection;
+        } catch (SQLException e) {
+            synchronized (this) {
+                openCount -= 1;                     // give the slot back
+                notify();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Tells whether an idle connection can be handed out again. Connections
+     * that were used recently are trusted without a round trip.
+     */
+    private boolean isValid(IdleConnection candidate) {
+        if (System.currentTimeMillis() - candidate.since < VALIDATION_INTERVAL_MILLIS) {
+            return true;
+        }
+        try {
+            return candidate.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Removes the connections idle for too long. Must be called with the lock
+     * held; the returned connections must be closed once the lock is released.
+     */
+    private List<Connection> evictIdle(long now) {
+        List<Connection> stale = null;
+        // the oldest connections are at the end of the deque
+        while (!idle.isEmpty() && now - idle.peekLast().since > idleTimeoutMillis) {
+            if (stale == null) {
+                stale = new ArrayList<Connection>();
+            }
+            stale.add(idle.pollLast().connection);
+            openCount -= 1;
+            evictedCount += 1;
+        }
+        return stale;
+    }
+
+    /**
+     * Closes a connection that leaves the pool for good and frees its slot.
+     */
+    private void discard(Connection connection, boolean invalid) {
+        synchronized (this) {
+            openCount -= 1;
+            if (invalid) {
+                invalidCount += 1;
+            }
+            notify();
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // the connection is unusable anyway
+        }
+    }
+
+    private synchronized void recordBorrow(long nanos, boolean waited) {
+        borrowCount += 1;
+        if (waited) {
+            waitCount += 1;
+        }
+        waitNanos += nanos;
+        if (nanos > maxWaitNanos) {
+            maxWaitNanos = nanos;
+        }
+    }
+
+    private static void closeAll(List<Connection> connections) {
+        if (connections == null) {
+            return;
+        }
+        for (Connection connection : connections) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // the connection is being discarded anyway
+            }
+        }
+    }
+
+}
@@ -2,6 +2,12 @@ package model;
 
 import java.util.*;
 import java.util.Date;                  // Specifies Dates given below are from java.util
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.time.ZoneId;
 
 import java.sql.*;                      // Provides with JDBC Classes
 
@@ -26,9 +32,66 @@ import java.io.FileInputStream;
  */
 public class DataAccess {
     
-    // private attribute representing connection to the database
+    // private attribute representing connection to the database (dedicated mode)
     private Connection connection = null;
     
+    // pool of connections shared by all the threads (pooled mode)
+    private ConnectionPool pool = null;
+    
+    // prepared statements cached per connection, and their hit/miss counters
+    private final Map<Connection, StatementCache> statementCaches = new IdentityHashMap<Connection, StatementCache>();
+    private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+    
+    // how the search operations read the database, unless specified otherwise per call
+    private volatile ReadMode readMode = ReadMode.SNAPSHOT;
+    
+    // how the seats of the bookings are chosen among the available ones
+    private volatile SeatAllocation seatAllocation = SeatAllocation.FIRST_FIT;
+    
+    // runs the booking and cancellation transactions, again if they lose a deadlock
+    private final TransactionRunner transactions = new TransactionRunner(TransactionRunner.DEFAULT_MAX_ATTEMPTS,
+            TransactionRunner.DEFAULT_BASE_BACKOFF_MILLIS, TransactionRunner.DEFAULT_MAX_BACKOFF_MILLIS);
+    
+    // booking IDs handed out in memory, by blocks reserved in the database
+    private final BookingIdAllocator bookingIds = new BookingIdAllocator(BookingIdAllocator.DEFAULT_BLOCK_SIZE);
+    
+    // in-memory copy of the period calendar (PlageDates), loaded on first use
+    private volatile PeriodCalendar calendar = null;
+    private final AtomicLong calendarLoads = new AtomicLong();
+    
+    // in-memory index of the train routes (Train_Segment), loaded on first use
+    private volatile RouteIndex routes = null;
+    private final AtomicLong routeLoads = new AtomicLong();
+    
+    // in-memory copy of the tariffs (Classe and Periode), loaded on first use
+    private volatile TariffMatrix tariffs = null;
+    private final AtomicLong tariffLoads = new AtomicLong();
+    
+    // seats of the trains, by train and period colour, loaded on first use
+    private final Map<String, SeatLayout> seatLayouts = new ConcurrentHashMap<String, SeatLayout>();
+    
+    // minimum time between two trains of an itinerary
+    private volatile int transferSeconds = ConnectionPlanner.DEFAULT_TRANSFER_SECONDS;
+    
+    // pool computing the journeys of long ranges in parallel (null: sequentially), and the size of their partitions
+    private volatile ForkJoinPool searchPool = null;
+    private volatile int searchPartitionDays = TimetableSearch.DEFAULT_PARTITION_DAYS;
+    
+    // timetables of the trains, by train and period colour, loaded on first use
+    private final TimetableCache timetableCache = new TimetableCache(TimetableCache.DEFAULT_MAX_WEIGHT,
+            TimetableCache.DEFAULT_TIME_TO_LIVE_MILLIS);
+    
+    // seats held in memory until their holds are confirmed, released or expired
+    private final SeatHoldRegistry holds = new SeatHoldRegistry(SeatHoldRegistry.DEFAULT_TIME_TO_LIVE_MILLIS);
+    
+    // the remaining-capacity counters known to exist, by train, day and class ("train/day/class")
+    private final Set<String> capacities = ConcurrentHashMap.newKeySet();
+    private final AtomicLong capacityRefusals = new AtomicLong();
+    
+    // number of bookings made, and of the statements they ran
+    private final AtomicLong bookingCount = new AtomicLong();
+    private final AtomicLong bookingStatements = new AtomicLong();
+    
     /**
      * Creates a new <code>DataAccess</code> object that interacts with the
      * specified database, using the specified login and password. Each object
@@ -49,6 +112,341 @@ public class DataAccess {
             throw new DataAccessException("Error getting connection : " + e.getMessage());
     	}
     }
+    
+    /**
+     * Creates a new <b>pooled</b> <code>DataAccess</code> object that interacts
+     * with the specified database, using the specified login and password.
+     * Instead of a dedicated connection, the object borrows a connection from
+     * a pool of at most <code>poolSize</code> connections for the duration of
+     * each operation, so that a single object can be shared by any number of
+     * threads. The pool is closed when the {@link close} method is called.
+     *
+     * @param url the url of the database to connect to
+     * @param login the (application) login to use
+     * @param password the password
+     * @param poolSize the maximum number of connections opened at once
+     *
+     * @throws DataAccessException if an unrecoverable error occurs
+     */
+    public DataAccess(String url, String login, String password, int poolSize) throws DataAccessException {
+        if(poolSize <= 0)
+            throw new DataAccessException("Invalid pool size: " + poolSize);
+        pool = new ConnectionPool(url, login, password, poolSize,
+                ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS, ConnectionPool.DEFAULT_BORROW_TIMEOUT_MILLIS);
+        // fail fast if the database cannot be reached
+        release(acquire());
+    }
+    
+    /**
+     * Returns the number of operations this object can run at once: the size of
+     * its pool, or 1 in dedicated mode
+     *
+     * @return the number of concurrent operations
+     */
+    int getConcurrency() {
+        return (pool == null) ? 1 : pool.getMaxSize();
+    }
+    
+    /**
+     * Getting the connection to use for one operation: the dedicated one, or
+     * one borrowed from the pool
+     *
+     * @return the connection, to be given back with {@link release}
+     *
+     * @throws DataAccessException if no connection could be obtained
+     */
+    private Connection acquire() throws DataAccessException {
+        if(pool == null)
+            return connection;
+        try {
+            return pool.borrow();
+        }
+        catch(SQLException e) {
+            throw new DataAccessException("Error getting connection : " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Giving back the connection used by an operation (no-op in dedicated mode)
+     *
+     * @param used the connection returned by {@link acquire}
+     */
+    private void release(Connection used) {
+        if(pool != null)
+            pool.release(used);
+    }
+    
+    /**
+     * Sets the way the search operations ({@link getTrainTimes},
+     * {@link buyTicket} and {@link getAvailableSeats}) read the database when
+     * no mode is specified for the call. The default is
+     * {@link ReadMode#SNAPSHOT}. Bookings and cancellations always run
+     * read-committed transactions serialized by the remaining-capacity
+     * counters of the segments they cover.
+     *
+     * @param mode the read mode to use
+     */
+    public void setReadMode(ReadMode mode) {
+        if(mode == null)
+            throw new IllegalArgumentException("read mode must not be null");
+        readMode = mode;
+    }
+    
+    /**
+     * Returns the way the search operations read the database when no mode is
+     * specified for the call.
+     *
+     * @return the current default read mode
+     */
+    public ReadMode getReadMode() {
+        return readMode;
+    }
+    
+    /**
+     * Sets the way the seats of a booking are chosen among the available ones
+     * of the wanted class. The default is {@link SeatAllocation#FIRST_FIT}.
+     *
+     * @param allocation the strategy to use
+     */
+    public void setSeatAllocation(SeatAllocation allocation) {
+        if(allocation == null)
+            throw new IllegalArgumentException("seat allocation must not be null");
+        seatAllocation = allocation;
+    }
+    
+    /**
+     * Returns the way the seats of a booking are chosen.
+     *
+     * @return the current seat allocation strategy
+     */
+    public SeatAllocation getSeatAllocation() {
+        return seatAllocation;
+    }
+    
+    /**
+     * Starting a transaction on the given connection: a read-only snapshot for
+     * searches, a serializable read-write transaction otherwise
+     *
+     * @param connection
+     * @param mode
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private void begin(Connection connection, ReadMode mode)
+        throws SQLException {
+        boolean readOnly = (mode == ReadMode.SNAPSHOT);
+        connection.setAutoCommit(false);
+        // must be set between transactions, i.e. before the first statement
+        connection.setReadOnly(readOnly);
+        connection.setTransactionIsolation(readOnly ? Connection.TRANSACTION_REPEATABLE_READ
+                                                    : Connection.TRANSACTION_SERIALIZABLE);
+    }
+    
+    /**
+     * Starting a booking or cancellation transaction on the given connection: a
+     * read-write transaction reading the committed data. The bookings are kept
+     * consistent by the remaining-capacity counters of the segments they cover
+     * (see reserveCapacity), whose row locks make the bookings of overlapping
+     * journeys wait for each other while the other ones run concurrently
+     *
+     * @param connection
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private void beginBooking(Connection connection)
+        throws SQLException {
+        connection.setAutoCommit(false);
+        // must be set between transactions, i.e. before the first statement
+        connection.setReadOnly(false);
+        connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+    }
+    
+    /**
+     * Getting a prepared statement for the given SQL text from the cache bound
+     * to the given connection, so that each statement is parsed once per
+     * connection. The statement must not be closed, but its result sets must.
+     *
+     * @param connection
+     * @param sql
+     *
+     * @return the corresponding statement, its parameters cleared
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private PreparedStatement prepare(Connection connection, String sql)
+        throws SQLException {
+        return statements(connection).prepare(sql);
+    }
+    
+    /**
+     * Getting the statement cache bound to the given connection, creating it
+     * on first use
+     *
+     * @param connection
+     *
+     * @return the corresponding cache
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private StatementCache statements(Connection connection)
+        throws SQLException {
+        synchronized(statementCaches) {
+            StatementCache cache = statementCaches.get(connection);
+            if(cache == null) {
+                // a new connection usually replaces a closed one: forget the caches of closed connections
+                Iterator<Connection> i = statementCaches.keySet().iterator();
+                while(i.hasNext()) {
+                    if(i.next().isClosed())
+                        i.remove();
+                }
+                cache = new StatementCache(connection, StatementCache.DEFAULT_CAPACITY, statementCounters);
+                statementCaches.put(connection, cache);
+            }
+            return cache;
+        }
+    }
+    
+    /**
+     * Discards the reference data (period calendar, timetables...) this object
+     * keeps in memory, so that it is read again from the database on next use.
+     * The application must call this method after modifying these data by
+     * other means than this class; otherwise, the data are read again
+     * periodically.
+     */
+    public void invalidateCaches() {
+        calendar = null;
+        routes = null;
+        tariffs = null;
+        timetableCache.invalidate();
+        seatLayouts.clear();
+        capacities.clear();
+    }
+    
+    /**
+     * Discards the routes, timetables and seats of the specified train this
+     * object keeps in memory. The application must call this method after
+     * modifying the segments (<code>Train_Segment</code>), the departures
+     * (<code>Depart</code>) or the cars (<code>Voiture</code>) of a single
+     * train; after modifying the length of a segment (<code>Segment</code>),
+     * which may be shared by several trains, it must call
+     * {@link #invalidateCaches()} instead.
+     *
+     * @param trainNumber the number of the train
+     */
+    public void invalidateTrain(int trainNumber) {
+        RouteIndex current = routes;
+        if(current != null)
+            current.invalidateTrain(trainNumber);
+        timetableCache.invalidateTrain(trainNumber);
+        seatLayouts.keySet().removeIf(key -> key.startsWith(trainNumber + "/"));
+    }
+    
+    /**
+     * Getting the period calendar, reading it from the database if it was
+     * never read, invalidated or expired
+     *
+     * @param connection
+     *
+     * @return the calendar
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private PeriodCalendar calendar(Connection connection)
+        throws SQLException {
+        PeriodCalendar current = calendar;
+        if(current == null || current.isExpired()) {
+            // concurrent loads are harmless: the last one wins
+            current = PeriodCalendar.load(statements(connection), PeriodCalendar.DEFAULT_TIME_TO_LIVE_MILLIS);
+            calendarLoads.incrementAndGet();
+            calendar = current;
+        }
+        return current;
+    }
+    
+    /**
+     * Getting the route index, reading it from the database if it was never
+     * read, invalidated or expired, or else reading again the routes of the
+     * trains invalidated since
+     *
+     * @param connection
+     *
+     * @return the index
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private RouteIndex routes(Connection connection)
+        throws SQLException {
+        RouteIndex current = routes;
+        if(current == null || current.isExpired()) {
+            // concurrent loads are harmless: the last one wins
+            current = RouteIndex.load(statements(connection), RouteIndex.DEFAULT_TIME_TO_LIVE_MILLIS);
+            routeLoads.incrementAndGet();
+            routes = current;
+        }
+        else {
+            current.refresh(statements(connection));
+        }
+        return current;
+    }
+    
+    /**
+     * Getting the tariffs, reading them from the database if they were never
+     * read, invalidated or expired
+     *
+     * @param connection
+     *
+     * @return the tariffs
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private TariffMatrix tariffs(Connection connection)
+        throws SQLException {
+        TariffMatrix current = tariffs;
+        if(current == null || current.isExpired()) {
+            // concurrent loads are harmless: the last one wins
+            current = TariffMatrix.load(statements(connection), TariffMatrix.DEFAULT_TIME_TO_LIVE_MILLIS);
+            tariffLoads.incrementAndGet();
+            tariffs = current;
+        }
+        return current;
+    }
+    
+    /**
+     * Returns a snapshot of the runtime statistics of this object, e.g. the
+     * number of connections borrowed from the pool and the time spent waiting
+     * for them. Counters are identified by dotted names and sorted by name.
+     *
+     * @return the statistics, an empty map if none is maintained
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new TreeMap<String, Long>();
+        if(pool != null)
+            pool.collectStatistics(statistics);
+        statementCounters.collectStatistics(statistics);
+        bookingIds.collectStatistics(statistics);
+        transactions.collectStatistics(statistics);
+        statistics.put("calendar.loads", calendarLoads.get());
+        PeriodCalendar current = calendar;
+        statistics.put("calendar.ranges", current == null ? 0L : (long)current.size());
+        statistics.put("routes.loads", routeLoads.get());
+        RouteIndex index = routes;
+        if(index != null)
+            index.collectStatistics(statistics);
+        statistics.put("tariffs.loads", tariffLoads.get());
+        timetableCache.collectStatistics(statistics);
+        holds.collectStatistics(statistics);
+        long bookings = bookingCount.get();
+        statistics.put("bookings.count", bookings);
+        statistics.put("bookings.statements", bookingStatements.get());
+        statistics.put("bookings.statements.avg", bookings == 0 ? 0L : bookingStatements.get() / bookings);
+        statistics.put("capacity.counters", (long)capacities.size());
+        statistics.put("capacity.refusals", capacityRefusals.get());
+        statistics.put("seats.layouts", (long)seatLayouts.size());
+        synchronized(statementCaches) {
+            statistics.put("statements.caches", (long)statementCaches.size());
+        }
+        return statistics;
+    }
 
    /**
      * Creates and populates the database according to all the examples provided
@@ -67,7 +465,11 @@ public class DataAccess {
      */
     public void initDatabase() throws DataAccessException {
         int okCount = 0;
+        Connection connection = acquire();
         try {
+            // the script runs statement by statement, committed one at a time, whatever the last operation left
+            ConnectionPool.reset(connection);
+            
             // read file
             File file = new File("database.sql");
             FileInputStream stream = new FileInputStream(file);
@@ -80,26 +482,32 @@ public class DataAccess {
             String statements[] = contents.split(";");
 
             // execute statements
-            Statement jdbc = connection.createStatement();
-            for (String statement : statements) {
-                // remove comments
-                statement = statement.replaceAll(" *-- .*(\\n|\\r)", "");
-                // remove end of lines 
-                statement = statement.replaceAll(" *(\\n|\\r)", "");
-                if (statement.isEmpty()) {
-                    continue;
-                }
-                String message = "initDatabase(): '" + statement + "': ";
-                try {
-                    jdbc.executeUpdate(statement);
-                    System.err.println(message + "ok");
-                    okCount += 1;
-                } catch (SQLException e) {
-                    System.err.println(message + "FAILED (" + e.getMessage() + ")");
+            try (Statement jdbc = connection.createStatement()) {
+                for (String statement : statements) {
+                    // remove comments
+                    statement = statement.replaceAll(" *-- .*(\\n|\\r)", "");
+                    // remove end of lines 
+                    statement = statement.replaceAll(" *(\\n|\\r)", "");
+                    if (statement.isEmpty()) {
+                        continue;
+                    }
+                    String message = "initDatabase(): '" + statement + "': ";
+                    try {
+                        jdbc.executeUpdate(statement);
+                        System.err.println(message + "ok");
+                        okCount += 1;
+                    } catch (SQLException e) {
+                        System.err.println(message + "FAILED (" + e.getMessage() + ")");
+                    }
                 }
             }
         } catch (Exception e) {
             throw new DataAccessException(e);
+        } finally {
+            release(connection);
+            // the block numbers start over with the new database
+            bookingIds.reset();
+            invalidateCaches();
         }
         if (okCount == 0) {
             throw new DataAccessException("failed to create database");
@@ -116,464 +524,214 @@ public class DataAccess {
      *
      * @throws SQLException if an unrecoverable error occurs
      */
-    private String getPeriodFromDate(Date date)
+    private String getPeriodFromDate(Connection connection, Date date)
         throws SQLException {
         
-        // extracting year, month and day from the given year
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        int year = cal.get(Calendar.YEAR);
-        int month = cal.get(Calendar.MONTH) + 1;        // 0 => 11 otherwise
-        int day = cal.get(Calendar.DAY_OF_MONTH);
-        
-        // query preparation
-        PreparedStatement st = connection.prepareStatement(""
-                + "SELECT couleurPeriode "
-                + "FROM PlageDates "
-                + "WHERE (? >= YEAR(debut) AND ? >= MONTH(debut) AND ? >= DAY(debut)) AND "
-                + "(? <= YEAR(fin) AND ? <= MONTH(fin) AND ? <= DAY(fin))");
-        st.setInt(1, year); 
-        st.setInt(2, month); 
-        st.setInt(3, day); 
-        st.setInt(4, year); 
-        st.setInt(5, month); 
-        st.setInt(6, day); 
-        
-        // query execution
-        ResultSet result = st.executeQuery();
-        
-        // returns the period if any was found, null otherwise
-        return (result.next()) ? result.getString(1) : null; 
+        // binary search in the in-memory calendar instead of a full scan of PlageDates
+        return calendar(connection).periodOf(date);
     }
     
      /**
-     * Getting a train's planning during the given DAY
+     * Getting the timetable of a train during a period, from the cache or else
+     * from the database (in which case all the timetables of the train are cached)
      *
      * @param train
-     * @param date
+     * @param period
+     *
+     * @return the timetable, possibly without any departure, or <code>null</code>
+     * if the train doesn't exist
      *
-     * @return the [station => datetime] mapping for the train during this day
-     * <code>null</code> if the train does not travel during this day
      * @throws SQLException if an unrecoverable error occurs
      */
-    private Map<String, Date> getTrainPlanning(int train, Date date)
+    private TrainTimetable getTimetable(Connection connection, int train, String period)
         throws SQLException {
-        
-        // the planning to return
-        Map<String, Date> planning = new HashMap<String, Date>();
-        
-        // getting the corresponding period
-        String period = getPeriodFromDate(date);
-        
-        // query preparation (rk: we only store one segment for both directions)
-        PreparedStatement st = connection.prepareStatement(""
-                + "SELECT TS.gareDepart, TS.gareArrivee, vitesse, rang, S.longueur, horaire "
-                + "FROM (Train_Segment TS NATURAL JOIN Depart) JOIN Segment S ON "
-                + "(TS.gareDepart = S.gareDepart AND TS.gareArrivee = S.gareArrivee) OR "
-                + "(TS.gareDepart = S.gareArrivee AND TS.gareArrivee = S.gareDepart) "
-                + "WHERE numeroTrain = ? AND "
-                + "couleurPeriode = ? "
-                + "ORDER BY rang");   
-        st.setInt(1, train);
-        st.setString(2, period);
-        
-        // query execution
-        ResultSet result = st.executeQuery();
-        
-        // constructing the initial station (returns null if result is empty)
-        if(!result.next())
-            return null;
-        
-        // main calendar to store the complete dates of station serving
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        // we don't want the given time to influence the planning
-        cal.set(Calendar.HOUR_OF_DAY, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.SECOND, 0);
-        cal.getTime();
-        
-        // calendar only representing time (because Time class is deprecated)
-        Calendar time = Calendar.getInstance();
-        time.setTime(result.getTime(6, cal));                   // initial time, "horaire" field
-        
-        // applying the initial TIME to the given DAY
-        cal.set(Calendar.HOUR, time.get(Calendar.HOUR_OF_DAY)); 
-        cal.set(Calendar.MINUTE, time.get(Calendar.MINUTE)); 
-        cal.set(Calendar.SECOND, time.get(Calendar.SECOND)); 
-        
-        // declaration of the loop variables
-        String depStation = result.getString(1);        // departureStation
-        String arrStation = null;                       // arrivalStation
-        double speed = 0.0d, distance = 0.0d;
-        double addedRawHours = 0.0d;
-        int addedHours, addedMinutes, addedSeconds;
-        
-        // we already know the data for the first station
-        planning.put(depStation, cal.getTime());
-        
-        do {
-            /// adding the arrival station to the planning
-            // getting the name of the segment's arrival station
-            arrStation = result.getString(2);
-            
-            // computing the added time to reach the station
-            speed = result.getDouble(3);
-            distance = result.getDouble(5);
-            
-            addedRawHours = distance/speed;                                 // t = d/v => X.XXXX hours
-            
-            // conversion into time and addition to the previous date
-            addedHours = (int)addedRawHours;
-            // Decimal part of hours x 60, int truncated
-            addedMinutes = (int)((addedRawHours - (double)addedHours)*60); 
-            // Decimal part of minutes x 60, rounded this time because we have no more precision
-            addedSeconds = (int)Math.round((((addedRawHours - (double)addedHours)*60) - (double)addedMinutes)*60);
-            
-            cal.add(Calendar.HOUR_OF_DAY, addedHours);
-            cal.add(Calendar.MINUTE, addedMinutes);
-            cal.add(Calendar.SECOND, addedSeconds);
-               
-            planning.put(arrStation, cal.getTime());
-            
-        }while(result.next());                                      // Leaving or going on to the next segment             
-        
-        return planning;
+        TrainTimetable timetable = timetableCache.get(train, period);
+        TrainRoute route = (timetable == null) ? routes(connection).route(train) : null;
+        if(route != null) {
+            for(TrainTimetable loaded : loadTimetables(connection, Collections.singleton(period), Collections.singletonList(route))) {
+                if(loaded.getPeriod().equals(period))
+                    timetable = loaded;
+            }
+        }
+        return timetable;
     }
     
      /**
-     * Getting the list of trains matching a given journey
+     * Checking whether a train matches a given journey during a given period
      *
+     * @param trainNumber
      * @param departureStation
      * @param arrivalStation
-     *
-     * @return the corresponding list of trains, <code>null</code> if no train matches the journey
+     * @param period
+     * @return <code>true</code> if the train serves the stations in that order during that period
      *
      * @throws SQLException if an unrecoverable error occurs
      */
-    private List<Integer> getTrainsMatchingJourney(String departureStation, String arrivalStation)
+    private boolean trainMatchesJourney(Connection connection, int trainNumber, String departureStation, String arrivalStation, String period)
         throws SQLException {
-        
-        // the list to return
-        List<Integer> trains = new ArrayList<Integer>();
-        
-        // query preparation
-        PreparedStatement st = connection.prepareStatement(""
-                + "SELECT T1.numeroTrain "
-                + "FROM Train_Segment T1 JOIN Train_Segment T2 ON "
-                + "T1.numeroTrain = T2.numeroTrain "
-                + "WHERE T1.gareDepart = ? AND T2.gareArrivee = ? AND "
-                + "T1.rang <= T2.rang");
-        st.setString(1, departureStation);
-        st.setString(2, arrivalStation);
-        
-        // query execution
-        ResultSet result = st.executeQuery();
-        
-        // returning the mathcing trains, null if none
-        if(!result.next())
-            return null;
-        do {
-            trains.add(result.getInt(1));                   // autoboxing int => Integer
-        }while(result.next());
-        
-        return trains;
+        TrainRoute route = routes(connection).route(trainNumber);
+        return route != null && route.getPeriods().contains(period) && route.serves(departureStation, arrivalStation);
     }
     
-     /**
-     * Getting the list of trains matching a given journey during a given period
+    /**
+     * See Operation 2.1.1.
      *
      * @param departureStation
      * @param arrivalStation
-     * @param period
-     * @return the corresponding list of trains, <code>null</code> if no train matches the journey during that period
+     * @param fromDate
+     * @param toDate
      *
-     * @throws SQLException if an unrecoverable error occurs
+     * @return the corresponding list of journeys, including the empty list if
+     * no journey is found
+     *
+     * @throws DataAccessException if an unrecoverable error occurs
      */
-    private List<Integer> getTrainsMatchingJourney(String departureStation, String arrivalStation, String period)
-        throws SQLException {
-        
-        // the list to return
-        List<Integer> trains = new ArrayList<Integer>();
-        
-        // query preparation: only the trains that match stations during the specified period
-        PreparedStatement st = connection.prepareStatement(""
-                + "SELECT T1.numeroTrain "
-                + "FROM (Train_Segment T1 JOIN Train_Segment T2 ON "
-                + "T1.numeroTrain = T2.numeroTrain) JOIN Depart ON Depart.numeroTrain = T1.numeroTrain "
-                + "WHERE T1.gareDepart = ? AND T2.gareArrivee = ? AND "
-                + "T1.rang <= T2.rang AND "
-                + "couleurPeriode = ?");
-        st.setString(1, departureStation);
-        st.setString(2, arrivalStation);
-        st.setString(3, period);
-        
-        // query execution
-        ResultSet result = st.executeQuery();
-        
-        // returning the mathcing trains, null if none
-        if(!result.next())
-            return null;
-        do {
-            trains.add(result.getInt(1));                   // autoboxing int => Integer
-        }while(result.next());
-        
-        return trains;
+    public List<Journey> getTrainTimes(String departureStation, String arrivalStation, Date fromDate, Date toDate)
+        throws DataAccessException {
+        return getTrainTimes(departureStation, arrivalStation, fromDate, toDate, readMode);
     }
     
     /**
-     * See Operation 2.1.1.
+     * See Operation 2.1.1, reading the database in the specified mode rather
+     * than in the default one of this object (see {@link setReadMode}).
      *
      * @param departureStation
      * @param arrivalStation
      * @param fromDate
      * @param toDate
+     * @param mode the read mode to use for this call
      *
      * @return the corresponding list of journeys, including the empty list if
      * no journey is found
      *
      * @throws DataAccessException if an unrecoverable error occurs
      */
-    public List<Journey> getTrainTimes(String departureStation, String arrivalStation, Date fromDate, Date toDate)
+    public List<Journey> getTrainTimes(String departureStation, String arrivalStation, Date fromDate, Date toDate, ReadMode mode)
         throws DataAccessException {
-        
-        // the list to return
-        List<Journey> journeys = new ArrayList<Journey>();
-        
-        // the journey to add
-        Journey journey = null; 
-        
-        // planning of the current train during the current day
-        Map<String, Date> trainPlanning = null; 
-        
-        // dates manipulation
-        Calendar start = Calendar.getInstance();
-        Calendar end = Calendar.getInstance();
-        start.setTime(fromDate);
-        end.setTime(toDate);
-        
-        // we need to loop over the DAYS, so we set the same times for the calendars
-        start.set(Calendar.HOUR_OF_DAY, 1); 
-        start.set(Calendar.MINUTE, 1);
-        start.set(Calendar.SECOND, 1); 
-        end.set(Calendar.HOUR_OF_DAY, 1); 
-        end.set(Calendar.MINUTE, 1);
-        end.set(Calendar.SECOND, 1); 
-        
-        // encapsulate data queries into an ACID transaction 
+        Connection connection = acquire();
         try {
-            connection.setAutoCommit(false);
-            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
-            
-            // getting the trains that match the stations (in the right order)
-            List<Integer> trains = getTrainsMatchingJourney(departureStation, arrivalStation); 
-            if(trains == null) {
-                // no train in the database matches the stations
-                connection.commit();
-                return journeys;
-            }
-                
-            // for each given day
-            Date date = start.getTime();
-            while(!start.after(end))
-            {
-                for(Integer train : trains) {
-                   trainPlanning = getTrainPlanning(train, date);
-                   if(trainPlanning != null) {
-                       // if the departure is after the full fromDate and arrival before the full toDate, keep the journey
-                        if(trainPlanning.get(departureStation).after(fromDate) && trainPlanning.get(arrivalStation).before(toDate))
-                            journeys.add(new Journey(departureStation, arrivalStation, train, trainPlanning.get(departureStation), trainPlanning.get(arrivalStation)));
-                   }
-                }
-                // adding a day to the starting date
-                start.add(Calendar.DATE, 1);
-                date = start.getTime();
-            }
-            // committing the transaction - next transaction will start after the next SQL statement
-            connection.commit();
+            return getTrainTimes(connection, departureStation, arrivalStation, fromDate, toDate, mode);
         }
-        catch(SQLException e) {
-            // making sure the transaction is aborted
+        finally {
+            release(connection);
+        }
+    }
+    
+     /**
+     * See Operation 2.1.1, using the specified connection
+     */
+    private List<Journey> getTrainTimes(Connection connection, String departureStation, String arrivalStation, Date fromDate, Date toDate, ReadMode mode)
+        throws DataAccessException {
+        
+        // the daily journeys are computed in memory
+        TimetableSearch search = newTimetableSearch(connection, departureStation, arrivalStation, fromDate, toDate, mode);
+        if(search == null)
+            return new ArrayList<Journey>();
+        
+        // long ranges are split into partitions of days computed in parallel, if enabled
+        ForkJoinPool parallel = searchPool;
+        if(parallel != null) {
             try {
-                connection.rollback();
+                return search.journeys(search.getFirstDay(), search.getLastDay(), parallel, searchPartitionDays);
             }
-            catch (SQLException ee) {
-                throw new DataAccessException("Failing rollbacking transaction in 2.1.1: " + ee.getMessage());
+            catch(RejectedExecutionException e) {
+                // the pool was replaced (setSearchParallelism) or shut down (close) meanwhile
             }
-            throw new DataAccessException("Error occured in 2.1.1: " + e.getMessage());
         }
-        return journeys; 
+        return search.journeys(search.getFirstDay(), search.getLastDay());
     }
-
-     /**
-     * Getting the distance (in km) between two stations crossed by a train
+    
+    /**
+     * Like Operation 2.1.1, but the journeys are returned as a lazy stream: they
+     * are computed day by day as the stream is consumed, in the same order as
+     * {@link getTrainTimes}. Whatever the range, only one day of journeys is held
+     * in memory and the first journeys come at once, so that e.g. the first 10
+     * departures of a year cost no more than the ones of a day
+     * (<code>streamTrainTimes(...).limit(10)</code>).
+     * <p>
+     * The timetables are read before the method returns: the stream holds no
+     * connection and reads nothing from the database, so closing it is not
+     * required.
      *
-     * @param train
      * @param departureStation
      * @param arrivalStation
-     * @return the corresponding distance, <code>null</code> if
-     * some parameters were invalid
-     * @throws SQLException if an unrecoverable error occurs
-     */
-    private Float getDistance(int train, String departureStation, String arrivalStation)
-        throws SQLException {
-        
-        // the train has to travel to the passed stations
-        if(!getTrainsMatchingJourney(departureStation, arrivalStation).contains(train))
-            return null;
-        
-        // the distance to return
-        Float distance = new Float(0.0f);
-        
-        // query preparation
-        PreparedStatement st = connection.prepareStatement(""
-                + "SELECT TS.gareDepart, TS.gareArrivee, S.longueur "
-                + "FROM Train_Segment TS JOIN Segment S ON "
-                + "(TS.gareDepart = S.gareDepart AND TS.gareArrivee = S.gareArrivee) OR "
-                + "(TS.gareDepart = S.gareArrivee AND TS.gareArrivee = S.gareDepart) "
-                + "WHERE TS.numeroTrain = ? "
-                + "ORDER BY TS.rang");
-        st.setInt(1, train);
-        
-        // query execution
-        ResultSet result = st.executeQuery();
-        
-        // if unknown train return null
-        if(!result.next())
-            return null;
-        
-        // wait for the departure station to come in the list of segments
-        do {
-            if(result.getString(1).equals(departureStation))
-                break; 
-        }while(result.next());
-        
-        // we can now begin to increase the distance
-        do {
-            distance += result.getFloat(3);                         // add the segment length to global distance
-            if(result.getString(2).equals(arrivalStation))          // break loop if we arrived
-                break;
-        }while(result.next());
-        
-        return distance;
-    }
-
-     /**
-     * Getting the total price of a train ticket (without reservation)
+     * @param fromDate
+     * @param toDate
      *
-     * @param period
-     * @param travelClass
-     * @param distance
-     * @param passengerCount
-     * 
-     * @return the corresponding ticket price
+     * @return the corresponding journeys, including the empty stream if no
+     * journey is found
      *
-     * @throws SQLException if an unrecoverable error occurs
+     * @throws DataAccessException if an unrecoverable error occurs
      */
-    private Float getPrice(String period, String travelClass, Float distance, int passengerCount)
-        throws SQLException {
-        
-        // price by km query preparation
-        PreparedStatement stPriceKm = connection.prepareStatement(""
-                + "SELECT prixAuKm "
-                + "FROM Classe "
-                + "WHERE nomClasse = ?");
-        stPriceKm.setString(1, travelClass);
-
-        // price variation query preparation
-        PreparedStatement stPriceVar = connection.prepareStatement(""
-                + "SELECT variationTarif "
-                + "FROM Periode "
-                + "WHERE couleurPeriode = ?");
-        stPriceVar.setString(1, period);
-        
-        // queries execution
-        ResultSet resKm = stPriceKm.executeQuery();
-        ResultSet resVar = stPriceVar.executeQuery();
-        
-        if(!resKm.next() || !resVar.next())
-            return null;
-       
-        // compute the price
-        Float price = new Float((float)passengerCount * distance * resKm.getFloat(1) * resVar.getFloat(1));
-        
-        // round the price to 2 decimals: no half cent
-        price = Math.round(price * 100.0f)/100.0f; 
-        return price;
+    public Stream<Journey> streamTrainTimes(String departureStation, String arrivalStation, Date fromDate, Date toDate)
+        throws DataAccessException {
+        TimetableSearch search;
+        Connection connection = acquire();
+        try {
+            search = newTimetableSearch(connection, departureStation, arrivalStation, fromDate, toDate, readMode);
+        }
+        finally {
+            release(connection);
+        }
+        return (search == null) ? Stream.<Journey>empty() : search.stream();
     }
     
     /**
-     * See Operation 2.1.2
+     * Sets how the journeys of Operation 2.1.1 are computed once the timetables
+     * are read: the range of days is split into partitions of at most
+     * <code>partitionDays</code> days, computed on <code>parallelism</code>
+     * threads and merged back in chronological order. The timetables are still
+     * read by a single short transaction: the partitions only share them in
+     * memory. The default is a parallelism of 1, i.e. a sequential
+     * computation. The method may be called while searches run: the ones
+     * already computing on the previous threads complete on them, and the
+     * ones starting meanwhile are computed sequentially.
+     *
+     * @param parallelism the number of threads, 1 to compute sequentially
+     * @param partitionDays the maximum number of days of a partition
+     */
+    public void setSearchParallelism(int parallelism, int partitionDays) {
+        if(parallelism <= 0 || partitionDays <= 0)
+            throw new IllegalArgumentException("parallelism and partition size must be positive");
+        ForkJoinPool old = searchPool;
+        searchPartitionDays = partitionDays;
+        searchPool = (parallelism == 1) ? null : new ForkJoinPool(parallelism);
+        if(old != null)
+            old.shutdown();
+    }
+    
+     /**
+     * Getting the search of the journeys of Operation 2.1.1: the period calendar
+     * and the timetables of the trains serving the stations are read within a
+     * transaction, and the journeys computed later on in memory
      *
      * @param departureStation
      * @param arrivalStation
-     * @param travelPeriod
-     * @param passengerCount
-     * @param travelClass
-     *
-     * @return the bought ticket, or <code>null</code> if some parameter was
-     * incorrect
+     * @param fromDate
+     * @param toDate
+     * @param mode
+     * 
+     * @return the search, <code>null</code> if no train serves the journey during the range
      *
      * @throws DataAccessException if an unrecoverable error occurs
      */
-    public Ticket buyTicket(String departureStation, String arrivalStation, Period travelPeriod, int passengerCount, Class travelClass)
+    private TimetableSearch newTimetableSearch(Connection connection, String departureStation, String arrivalStation, Date fromDate, Date toDate, ReadMode mode)
         throws DataAccessException {
-
-        if(passengerCount <= 0)             // invalid number of people
-            return null;
-        
-        Float distance = 0.0f;
-        Float price = 0.0f;
-        
-        // period conversion
-        String period;
-        switch(travelPeriod) {
-            case BLUE: period = "bleue";
-            break;
-            case WHITE: period = "blanche";
-            break;
-            case RED: period = "rouge";
-            break;
-            default: period = null;    
-        }
-        // class conversion
-        String tClass;
-        switch(travelClass) {
-            case FIRST: tClass = "premiere";
-            break;
-            case SECOND: tClass = "seconde";
-            break;
-            default: tClass = null;
-        }
-
-        // if invalid period or class (not likely because of the enum) return null
-        if(period == null || tClass == null)
-            return null;
         
         // encapsulate data queries into an ACID transaction 
         try {
-            connection.setAutoCommit(false);
-            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
-            
-            // we first check that the wanted journey (stations + period) is possible with available trains
-            List<Integer> trains = getTrainsMatchingJourney(departureStation, arrivalStation, period); 
-            if(trains == null) {
-                // no train in the database matches the ticket
-                connection.commit();
-                return null;
-            }
-            
-            // compute the distance separating the stations, using one of the matching trains
-            distance = getDistance(trains.get(0), departureStation, arrivalStation);
+            begin(connection, mode);
             
-            // compute the final price of the ticket, giving it all necessary data
-            price = getPrice(period, tClass, distance, passengerCount);
+            // a constant number of queries whatever the range: the period calendar and the
+            // timetables of the trains serving the stations (in the right order), both cached
+            PeriodCalendar periods = calendar(connection);
+            Set<String> colours = periods.coloursFor(PeriodCalendar.toEpochDay(fromDate), PeriodCalendar.toEpochDay(toDate));
+            List<TrainTimetable> timetables = getTimetablesMatchingJourney(connection, departureStation, arrivalStation, colours);
             
             // committing the transaction - next transaction will start after the next SQL statement
             connection.commit();
-            if(distance != null && price != null) {
-                return new Ticket(departureStation, arrivalStation, travelPeriod, passengerCount, travelClass, price);
-            }
+            
+            return timetables.isEmpty() ? null : new TimetableSearch(departureStation, arrivalStation, fromDate, toDate, timetables, periods);
         }
         catch(SQLException e) {
             // making sure the transaction is aborted
@@ -581,107 +739,97 @@ public class DataAccess {
                 connection.rollback();
             }
             catch (SQLException ee) {
-                throw new DataAccessException("Failing rollbacking transaction in 2.1.2: " + ee.getMessage());
+                throw new DataAccessException("Failing rollbacking transaction in 2.1.1: " + ee.getMessage());
             }
-            throw new DataAccessException("Error occured in 2.1.2: " + e.getMessage());
+            throw new DataAccessException("Error occured in 2.1.1: " + e.getMessage());
         }
-        return null;
     }
-
+    
     /**
-     * See Operation 2.1.3.
+     * Like Operation 2.1.1, but also considering the journeys with changes of
+     * train: returns the itineraries from a station to another leaving after
+     * <code>fromDate</code> and arriving before <code>toDate</code> that are
+     * optimal for arrival time versus number of transfers, i.e. each of them
+     * arrives earlier than the ones with fewer transfers. A transfer requires
+     * the minimum transfer time (see {@link #setMinimumTransferTime}).
      *
-     * @param trainNumber
-     * @param departureDate
      * @param departureStation
      * @param arrivalStation
-     * @param passengerCount
-     * @param travelClass
-     * @param customerEmail
+     * @param fromDate
+     * @param toDate
+     * @param maxTransfers the maximum number of transfers, 0 for direct trains only
      *
-     * @return the booking, or <code>null</code> if some parameter was incorrect
-     * or not enough seats were available
+     * @return the corresponding itineraries, by increasing number of transfers,
+     * including the empty list if no itinerary is found
      *
      * @throws DataAccessException if an unrecoverable error occurs
      */
-    public Booking buyTicketAndBook(int trainNumber, Date departureDate, String departureStation, String arrivalStation, int passengerCount, Class travelClass, String customerEmail)
+    public List<Itinerary> getItineraries(String departureStation, String arrivalStation, Date fromDate, Date toDate, int maxTransfers)
+        throws DataAccessException {
+        Connection connection = acquire();
+        try {
+            return getItineraries(connection, departureStation, arrivalStation, fromDate, toDate, maxTransfers);
+        }
+        finally {
+            release(connection);
+        }
+    }
+    
+    /**
+     * Returns the itinerary from a station to another leaving after
+     * <code>fromDate</code> that arrives first before <code>toDate</code>, with
+     * as few transfers as possible (see {@link #getItineraries}).
+     *
+     * @param departureStation
+     * @param arrivalStation
+     * @param fromDate
+     * @param toDate
+     *
+     * @return the corresponding itinerary, or <code>null</code> if none is found
+     *
+     * @throws DataAccessException if an unrecoverable error occurs
+     */
+    public Itinerary getEarliestItinerary(String departureStation, String arrivalStation, Date fromDate, Date toDate)
+        throws DataAccessException {
+        List<Itinerary> itineraries = getItineraries(departureStation, arrivalStation, fromDate, toDate, ConnectionPlanner.DEFAULT_MAX_TRANSFERS);
+        return itineraries.isEmpty() ? null : itineraries.get(itineraries.size() - 1);
+    }
+    
+    /**
+     * Sets the minimum time between the arrival of a train and the departure
+     * of the next one in the itineraries with changes of train.
+     *
+     * @param minutes the minimum transfer time, in minutes
+     */
+    public void setMinimumTransferTime(int minutes) {
+        if(minutes < 0)
+            throw new IllegalArgumentException("transfer time must not be negative");
+        transferSeconds = minutes * 60;
+    }
+    
+     /**
+     * See getItineraries, using the specified connection
+     */
+    private List<Itinerary> getItineraries(Connection connection, String departureStation, String arrivalStation, Date fromDate, Date toDate, int maxTransfers)
         throws DataAccessException {
-        
-        if(passengerCount <= 0)             // invalid number of people
-            return null;
-        
-        List<Seat> availableSeats = null; 
-        List<Seat> bookedSeats = null;
-        Booking booking = null;
-        
-        // class conversion
-        String tClass;
-        switch(travelClass) {
-            case FIRST: tClass = "premiere";
-            break;
-            case SECOND: tClass = "seconde";
-            break;
-            default: tClass = null;
-        }
-        if(tClass == null)                              // invalid class
-            return null;
         
         // encapsulate data queries into an ACID transaction 
         try {
-            connection.setAutoCommit(false);
-            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
-            
-            // we first get the planning of the train during this day to verify if the specified date is correct
-            Map<String, Date> planning = getTrainPlanning(trainNumber, departureDate);
-            if(planning == null) {
-                // this train doesn't travel during this day
-                connection.commit();
-                return null;                
-            }
-            if(!(planning.get(departureStation).equals(departureDate)) || !(planning.containsKey(arrivalStation))) {
-               // the date is incorrect or the journey is not served by the train 
-                connection.commit();
-                return null;   
-            }
-            
-            // get the available seats for that train, section, date and class
-            availableSeats = getAvailableSeats(trainNumber, departureDate, departureStation, arrivalStation, tClass); 
-            
-            // the number of available seats must be greater or equal to the number of people
-            if(availableSeats.size() < passengerCount) {
-				connection.commit();
-				return null;
-			}
-            
-            // period conversion
-            Period travelPeriod = null;
-            String period = getPeriodFromDate(departureDate);
-            switch(period) {
-                case "bleue" : travelPeriod = Period.BLUE; 
-                break;
-                case "rouge" : travelPeriod = Period.RED; 
-                break;
-                case "blanche" : travelPeriod = Period.WHITE; 
-                break;
-                default: travelPeriod = null;
-            }            
-            
-            // compute booking total price (ticket + extra booking price)
-            Ticket ticket = buyTicket(departureStation, arrivalStation, travelPeriod, passengerCount, travelClass);
-            float bookingPrice = ticket.getTotalPrice() + (float)(20*passengerCount);
+            begin(connection, readMode);
             
-            // book the seats
-            bookedSeats = bookSeats(passengerCount, availableSeats);
+            // the timetables of all the trains and the period calendar, both cached
+            PeriodCalendar periods = calendar(connection);
+            long firstDay = PeriodCalendar.toEpochDay(fromDate);
+            long lastDay = PeriodCalendar.toEpochDay(toDate);
+            Set<String> colours = periods.coloursFor(firstDay, lastDay);
+            List<TrainTimetable> timetables = getAllTimetables(connection, colours);
             
-            // create booking (that has been created now)
-            Calendar cal = Calendar.getInstance();
-            booking = new Booking(customerEmail, bookingPrice, cal.getTime(), bookedSeats);
-            
-            // storing modifications in the database
-            String bookingID = saveBooking(booking, departureDate, departureStation, arrivalStation);
-            saveBookedSeats(trainNumber, bookedSeats, period, bookingID);
+            // committing the transaction - next transaction will start after the next SQL statement
+            connection.commit();
             
-			connection.commit();
+            // the itineraries are then computed in memory
+            ConnectionPlanner planner = new ConnectionPlanner(timetables, periods, firstDay, lastDay, transferSeconds);
+            return planner.itineraries(departureStation, arrivalStation, fromDate.getTime(), toDate.getTime(), maxTransfers);
         }
         catch(SQLException e) {
             // making sure the transaction is aborted
@@ -689,171 +837,1319 @@ public class DataAccess {
                 connection.rollback();
             }
             catch (SQLException ee) {
-                throw new DataAccessException("Failing rollbacking transaction in 2.1.3: " + ee.getMessage());
+                throw new DataAccessException("Failing rollbacking transaction in 2.1.1 (itineraries): " + ee.getMessage());
             }
-            throw new DataAccessException("Error occured in 2.1.3: " + e.getMessage());
+            throw new DataAccessException("Error occured in 2.1.1 (itineraries): " + e.getMessage());
         }
-        return booking;
     }
     
      /**
-     * Returning the "seatsNumber" first available seats to book
-     * 
-     * @param seatsNumber
-     * @param availableSeats
-     * 
-     * @return the seats to book
-     * 
-     * /!\ NO COHERENCE TEST. HAS TO BE DONE BEFORE CALLING THE METHOD
+     * Getting the timetables of all the trains for the given period colours, from
+     * the cache if they are all there (no query), or else from the database
+     *
+     * @param periods
+     *
+     * @return the corresponding timetables
+     *
+     * @throws SQLException if an unrecoverable error occurs
      */
-    private List<Seat> bookSeats(int seatsNumber, List<Seat> availableSeats) {
-        
-        // the list to return
-        List<Seat> seats = new ArrayList<Seat>();
+    private List<TrainTimetable> getAllTimetables(Connection connection, Collection<String> periods)
+        throws SQLException {
         
-        for(int i = 0; i < seatsNumber; i++) {
-            seats.add(availableSeats.get(i));
+        List<TrainTimetable> timetables = new ArrayList<TrainTimetable>();
+        if(periods.isEmpty())
+            return timetables;
+        
+        boolean complete = true;
+        for(TrainRoute route : routes(connection).routes()) {
+            for(String period : periods) {
+                TrainTimetable timetable = timetableCache.get(route.getTrain(), period);
+                if(timetable == null)
+                    complete = false;
+                else
+                    timetables.add(timetable);
+            }
         }
-        return seats;
+        if(complete)
+            return timetables;
+        
+        // some timetables are missing: reading them all again
+        return loadTimetables(connection, periods, routes(connection).routes());
     }
     
      /**
-     * Saving a booking into the database
+     * Getting the timetables, for the given period colours, of the trains serving
+     * the given stations in that order. They are taken from the cache if they are
+     * all there (no query), or else read again from the database (one query
+     * whatever the number of trains)
      *
-     * @param booking
-     * @param departureDate
      * @param departureStation
      * @param arrivalStation
-     * 
-     * @return the corresponding booking ID
+     * @param periods
+     *
+     * @return the corresponding timetables, an empty list if no train matches the journey
      *
      * @throws SQLException if an unrecoverable error occurs
      */
-    private String saveBooking(Booking booking, Date departureDate, String departureStation, String arrivalStation)
+    private List<TrainTimetable> getTimetablesMatchingJourney(Connection connection, String departureStation, String arrivalStation, Collection<String> periods)
         throws SQLException {
         
-        // the booking ID to return
-        String bookingID = null;
-        
-        ResultSet result = null;
-        char[] randomLetters = new char[6];
-        
-        // statement in order to check if the created booking ID is already in the database
-        PreparedStatement st1 = connection.prepareStatement(""
-                + "SELECT * "
-                + "FROM Reservation "
-                + "WHERE idReservation = ?");
-        do {
-            // create a random 6 upper-cased letters string
-            for(int i = 0; i < 6; i++) {
-                randomLetters[i] = (char)((int)'A' + (int)(Math.random()*((int)'Z' - (int)'A')));   
+        List<TrainTimetable> timetables = new ArrayList<TrainTimetable>();
+        if(periods.isEmpty())
+            return timetables;
+        
+        // the trains serving the stations in the right order
+        boolean complete = true;
+        List<TrainRoute> trains = new ArrayList<TrainRoute>();
+        for(RouteIndex.Match match : routes(connection).matches(departureStation, arrivalStation)) {
+            trains.add(match.getRoute());
+            for(String period : periods) {
+                TrainTimetable timetable = timetableCache.get(match.getTrain(), period);
+                if(timetable == null)
+                    complete = false;
+                else
+                    timetables.add(timetable);
             }
-            bookingID = new String(randomLetters);
-            // while the bookingID already exists in the database
-            st1.setString(1, bookingID);
-            result = st1.executeQuery();
-        }while(result.next());
-        
-        // insertion of booking
-        PreparedStatement st2 = connection.prepareStatement(""
-                + "INSERT INTO Reservation "
-                + "VALUES (?, ?, ?, ?, ?, ?)");
-        st2.setString(1, bookingID);
-        st2.setString(2, booking.getCustomer());
-        st2.setTimestamp(3, new java.sql.Timestamp(departureDate.getTime()));
-        st2.setFloat(4, booking.getAmount());
-        st2.setString(5, departureStation);
-        st2.setString(6, arrivalStation);
-        
-        st2.executeUpdate();
+        }
+        if(complete)
+            return timetables;
         
-        return bookingID;
+        // some timetables are missing: reading them all again
+        return loadTimetables(connection, periods, trains);
     }
-
+    
      /**
-     * Saving some booked seats into the database
+     * Reading the departures of some trains, for every period colour, and adding
+     * their timetables to the cache (one query whatever the number of trains:
+     * the travel times are computed from the routes)
      *
-     * @param booking
-     * @param departureDate
-     * @param departureStation
-     * @param arrivalStation
-     * 
-     * @return the corresponding booking ID
+     * @param periods the colours for which a timetable is returned even if the
+     * train doesn't travel during them
+     * @param routes the routes of the trains
+     *
+     * @return the timetables
      *
      * @throws SQLException if an unrecoverable error occurs
      */
-    private void saveBookedSeats(int trainNumber, List<Seat> bookedSeats, String period, String bookingID)
+    private List<TrainTimetable> loadTimetables(Connection connection, Collection<String> periods, Collection<TrainRoute> routes)
         throws SQLException {
         
-        int seatsNumber = bookedSeats.size();
+        // departure times of each train, by period colour (the whole table, unless a single train is wanted)
+        Map<Integer, Map<String, List<Integer>>> departures = new HashMap<Integer, Map<String, List<Integer>>>();
+        PreparedStatement st;
+        if(routes.size() == 1) {
+            st = prepare(connection, ""
+                    + "SELECT numeroTrain, couleurPeriode, horaire "
+                    + "FROM Depart "
+                    + "WHERE numeroTrain = ? "
+                    + "ORDER BY couleurPeriode, horaire");
+            st.setInt(1, routes.iterator().next().getTrain());
+        }
+        else {
+            st = prepare(connection, ""
+                    + "SELECT numeroTrain, couleurPeriode, horaire "
+                    + "FROM Depart "
+                    + "ORDER BY numeroTrain, couleurPeriode, horaire");
+        }
+        try (ResultSet result = st.executeQuery()) {
+            while(result.next()) {
+                int train = result.getInt(1);
+                String period = result.getString(2);
+                if(!departures.containsKey(train))
+                    departures.put(train, new LinkedHashMap<String, List<Integer>>());
+                if(!departures.get(train).containsKey(period))
+                    departures.get(train).put(period, new ArrayList<Integer>());
+                departures.get(train).get(period).add(result.getTime(3).toLocalTime().toSecondOfDay());
+            }
+        }
         
-        // insertion preparation
-        PreparedStatement st = connection.prepareStatement(""
-                + "INSERT INTO PlaceReservee "
-                + "VALUES (?, ?, ?, ?, ?)");
-        st.setString(2, bookingID);
-        st.setInt(4, trainNumber);
-        st.setString(5, period);
-        
-        // insertions
-        for(int i = 0; i < seatsNumber; i++) {
-            st.setInt(1, bookedSeats.get(i).getSeatNumber());
-            st.setInt(3, bookedSeats.get(i).getCarNumber());
-            
-            st.executeUpdate();
+        // one timetable per train and colour, an empty one for the given colours without departure
+        List<TrainTimetable> timetables = new ArrayList<TrainTimetable>();
+        for(TrainRoute route : routes) {
+            Map<String, List<Integer>> times = departures.get(route.getTrain());
+            if(times == null)
+                times = new LinkedHashMap<String, List<Integer>>();
+            for(String period : periods) {
+                if(!times.containsKey(period))
+                    times.put(period, Collections.<Integer>emptyList());
+            }
+            for(Map.Entry<String, List<Integer>> entry : times.entrySet()) {
+                int[] hours = new int[entry.getValue().size()];
+                for(int i = 0; i < hours.length; i++)
+                    hours[i] = entry.getValue().get(i);
+                TrainTimetable timetable = TrainTimetable.forRoute(route, entry.getKey(), hours);
+                timetableCache.put(timetable);
+                timetables.add(timetable);
+            }
         }
+        return timetables;
     }
     
     /**
-     * See Operation 2.1.4
+     * See Operation 2.1.2
      *
-     * @param bookingID
-     * @param customerEmail
+     * @param departureStation
+     * @param arrivalStation
+     * @param travelPeriod
+     * @param passengerCount
+     * @param travelClass
      *
-     * @return <code>true</code> if the booking was cancelled, and
-     * <code>false</code> otherwise
+     * @return the bought ticket, or <code>null</code> if some parameter was
+     * incorrect
      *
      * @throws DataAccessException if an unrecoverable error occurs
      */
-    public boolean cancelBooking(String bookingID, String customerEmail)
+    public Ticket buyTicket(String departureStation, String arrivalStation, Period travelPeriod, int passengerCount, Class travelClass)
+        throws DataAccessException {
+        return buyTicket(departureStation, arrivalStation, travelPeriod, passengerCount, travelClass, readMode);
+    }
+    
+    /**
+     * See Operation 2.1.2, reading the database in the specified mode rather
+     * than in the default one of this object (see {@link setReadMode}).
+     *
+     * @param departureStation
+     * @param arrivalStation
+     * @param travelPeriod
+     * @param passengerCount
+     * @param travelClass
+     * @param mode the read mode to use for this call
+     *
+     * @return the bought ticket, or <code>null</code> if some parameter was
+     * incorrect
+     *
+     * @throws DataAccessException if an unrecoverable error occurs
+     */
+    public Ticket buyTicket(String departureStation, String arrivalStation, Period travelPeriod, int passengerCount, Class travelClass, ReadMode mode)
+        throws DataAccessException {
+        Connection connection = acquire();
+        try {
+            return buyTicket(connection, departureStation, arrivalStation, travelPeriod, passengerCount, travelClass, mode);
+        }
+        finally {
+            release(connection);
+        }
+    }
+    
+     /**
+     * See Operation 2.1.2, using the specified connection
+     */
+    private Ticket buyTicket(Connection connection, String departureStation, String arrivalStation, Period travelPeriod, int passengerCount, Class travelClass, ReadMode mode)
         throws DataAccessException {
         
         // encapsulate data queries into an ACID transaction 
         try {
-            connection.setAutoCommit(false);
-            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
-            
-            // check if the couple bookingID - customerEmail exists
-            if(!isInReservation(bookingID, customerEmail) || seatsNumberWithBooking(bookingID) == 0) {
-                connection.commit();
-                return false;                                           // no such booking    
-            }
-            
-            // first delete from PlaceReservee because of the foreign key constraints
-            PreparedStatement st = connection.prepareStatement(""
-                    + "DELETE FROM PlaceReservee "
-                    + "WHERE idReservation = ?");
-            st.setString(1, bookingID);
-            st.executeUpdate();         
+            begin(connection, mode);
             
-            // if we had ON DELETE CASCADE, normally we wouldn't have to do the following
-            // but since we don't know whether the constraint will be respected or not
-            // we decided not to put it
-            st = connection.prepareStatement(""
-                    + "DELETE FROM Reservation "
-                    + "WHERE idReservation = ? ");        // we already checked the email
-            st.setString(1, bookingID);
-            st.executeUpdate();
+            Ticket ticket = priceTicket(connection, departureStation, arrivalStation, travelPeriod, passengerCount, travelClass);
             
-            // check if it succeeded
-            if(!isInReservation(bookingID, customerEmail) && seatsNumberWithBooking(bookingID) == 0) {
-                connection.commit();
-                return true;
-            }    
-            else {
-                connection.commit();
-                return false;
-            }    
+            // committing the transaction - next transaction will start after the next SQL statement
+            connection.commit();
+            return ticket;
+        }
+        catch(SQLException e) {
+            // making sure the transaction is aborted
+            try {
+                connection.rollback();
+            }
+            catch (SQLException ee) {
+                throw new DataAccessException("Failing rollbacking transaction in 2.1.2: " + ee.getMessage());
+            }
+            throw new DataAccessException("Error occured in 2.1.2: " + e.getMessage());
+        }
+    }
+    
+     /**
+     * Computing a ticket within the current transaction (no query once the
+     * routes and the tariffs are loaded)
+     *
+     * @param departureStation
+     * @param arrivalStation
+     * @param travelPeriod
+     * @param passengerCount
+     * @param travelClass
+     *
+     * @return the ticket, or <code>null</code> if some parameter was incorrect
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private Ticket priceTicket(Connection connection, String departureStation, String arrivalStation, Period travelPeriod, int passengerCount, Class travelClass)
+        throws SQLException {
+        return quoteTicket(routes(connection), tariffs(connection), departureStation, arrivalStation, travelPeriod, passengerCount, travelClass);
+    }
+    
+     /**
+     * Computing the ticket of the journey resolved in a transaction, from the
+     * distance along the booked train (no query once the tariffs are loaded)
+     *
+     * @param context the context of the transaction, its journey resolved
+     * @param departureStation
+     * @param arrivalStation
+     * @param passengerCount
+     * @param travelClass
+     *
+     * @return the ticket, or <code>null</code> if there is no tariff for the class or period
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private Ticket priceTicket(TransactionContext context, String departureStation, String arrivalStation, int passengerCount, Class travelClass)
+        throws SQLException {
+        if(context.getTravelPeriod() == null)                 // unknown period colour
+            return null;
+        float price = tariffs(context.getConnection()).price(context.getTravelPeriod(), travelClass, context.getDistance(), passengerCount);
+        if(Float.isNaN(price))
+            return null;
+        return new Ticket(departureStation, arrivalStation, context.getTravelPeriod(), passengerCount, travelClass, price);
+    }
+    
+     /**
+     * Computing a ticket from the route index and the tariffs, without any query
+     *
+     * @param index
+     * @param tariff
+     * @param departureStation
+     * @param arrivalStation
+     * @param travelPeriod
+     * @param passengerCount
+     * @param travelClass
+     *
+     * @return the ticket, or <code>null</code> if some parameter was incorrect
+     */
+    private static Ticket quoteTicket(RouteIndex index, TariffMatrix tariff, String departureStation, String arrivalStation, Period travelPeriod, int passengerCount, Class travelClass) {
+
+        // invalid number of people, period or class
+        if(passengerCount <= 0 || travelPeriod == null || travelClass == null)
+            return null;
+        
+        // we first check that the wanted journey (stations + period) is possible with available trains
+        String period = TariffMatrix.colourOf(travelPeriod);
+        TrainRoute route = null;
+        for(RouteIndex.Match match : index.matches(departureStation, arrivalStation)) {
+            if(match.getRoute().getPeriods().contains(period)) {
+                route = match.getRoute();
+                break;
+            }
+        }
+        if(route == null) {
+            // no train in the database matches the ticket
+            return null;
+        }
+        
+        // compute the final price of the ticket, using the distance along one of the matching trains
+        float price = tariff.price(travelPeriod, travelClass, route.distance(departureStation, arrivalStation), passengerCount);
+        if(Float.isNaN(price))
+            return null;
+        
+        return new Ticket(departureStation, arrivalStation, travelPeriod, passengerCount, travelClass, price);
+    }
+    
+    /**
+     * Prices many tickets at once, as Operation 2.1.2 does one by one. The
+     * tickets are computed in memory, from the train routes and the tariffs
+     * this object keeps: the database is only read if they are not loaded yet
+     * or have expired.
+     *
+     * @param requests the tickets to price
+     *
+     * @return the corresponding tickets, in the order of the requests, with
+     * <code>null</code> for the requests whose parameters were incorrect
+     *
+     * @throws DataAccessException if an unrecoverable error occurs
+     */
+    public List<Ticket> quoteTickets(List<FareRequest> requests)
+        throws DataAccessException {
+        
+        RouteIndex index = routes;
+        TariffMatrix tariff = tariffs;
+        if(index == null || index.isExpired() || index.isStale() || tariff == null || tariff.isExpired()) {
+            // (re)loading the reference data in a short transaction
+            Connection connection = acquire();
+            try {
+                begin(connection, readMode);
+                index = routes(connection);
+                tariff = tariffs(connection);
+                connection.commit();
+            }
+            catch(SQLException e) {
+                // making sure the transaction is aborted
+                try {
+                    connection.rollback();
+                }
+                catch (SQLException ee) {
+                    throw new DataAccessException("Failing rollbacking transaction in 2.1.2 (quotes): " + ee.getMessage());
+                }
+                throw new DataAccessException("Error occured in 2.1.2 (quotes): " + e.getMessage());
+            }
+            finally {
+                release(connection);
+            }
+        }
+        
+        // the tickets to return
+        List<Ticket> tickets = new ArrayList<Ticket>(requests.size());
+        for(FareRequest request : requests) {
+            tickets.add(quoteTicket(index, tariff, request.getDepartureStation(), request.getArrivalStation(),
+                    request.getTravelPeriod(), request.getPassengerCount(), request.getTravelClass()));
+        }
+        return tickets;
+    }
+
+    /**
+     * See Operation 2.1.3.
+     *
+     * @param trainNumber
+     * @param departureDate
+     * @param departureStation
+     * @param arrivalStation
+     * @param passengerCount
+     * @param travelClass
+     * @param customerEmail
+     *
+     * @return the booking, or <code>null</code> if some parameter was incorrect
+     * or not enough seats were available
+     *
+     * @throws DataAccessException if an unrecoverable error occurs
+     */
+    public Booking buyTicketAndBook(int trainNumber, Date departureDate, String departureStation, String arrivalStation, int passengerCount, Class travelClass, String customerEmail)
+        throws DataAccessException {
+        Connection connection = acquire();
+        try {
+            return buyTicketAndBook(connection, trainNumber, departureDate, departureStation, arrivalStation, passengerCount, travelClass, customerEmail);
+        }
+        finally {
+            release(connection);
+        }
+    }
+    
+     /**
+     * See Operation 2.1.3, using the specified connection
+     */
+    private Booking buyTicketAndBook(Connection connection, int trainNumber, Date departureDate, String departureStation, String arrivalStation, int passengerCount, Class travelClass, String customerEmail)
+        throws DataAccessException {
+        
+        if(passengerCount <= 0 || travelClass == null)         // invalid number of people or class
+            return null;
+        
+        // class conversion
+        String tClass = TariffMatrix.nameOf(travelClass);
+        
+        // encapsulate data queries into an ACID transaction, run again if it loses a deadlock
+        try {
+            return transactions.run(connection, c -> book(new TransactionContext(statements(c)), trainNumber, departureDate, departureStation, arrivalStation, passengerCount, travelClass, tClass, customerEmail));
+        }
+        catch(SQLException e) {
+            // making sure the transaction is aborted
+            try {
+                connection.rollback();
+            }
+            catch (SQLException ee) {
+                throw new DataAccessException("Failing rollbacking transaction in 2.1.3: " + ee.getMessage());
+            }
+            throw new DataAccessException("Error occured in 2.1.3: " + e.getMessage());
+        }
+    }
+    
+     /**
+     * Running one attempt of the booking transaction of Operation 2.1.3: every
+     * step shares the facts resolved once in the context, within a single
+     * transaction
+     *
+     * @param context
+     * @param trainNumber
+     * @param departureDate
+     * @param departureStation
+     * @param arrivalStation
+     * @param passengerCount
+     * @param travelClass
+     * @param tClass the travel class, as stored in the database
+     * @param customerEmail
+     *
+     * @return the booking, or <code>null</code> if some parameter was incorrect
+     * or not enough seats were available
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private Booking book(TransactionContext context, int trainNumber, Date departureDate, String departureStation, String arrivalStation, int passengerCount, Class travelClass, String tClass, String customerEmail)
+        throws SQLException {
+        
+        Connection connection = context.getConnection();
+        beginBooking(connection);
+        
+        // we first check that the train leaves the departure station at the specified date and then serves the arrival one
+        if(!resolveJourney(context, trainNumber, departureDate, departureStation, arrivalStation)) {
+            connection.commit();
+            return null;
+        }
+        
+        // compute booking total price (ticket + extra booking price)
+        Ticket ticket = priceTicket(context, departureStation, arrivalStation, passengerCount, travelClass);
+        if(ticket == null) {
+            // no price for this journey
+            connection.commit();
+            return null;
+        }
+        float bookingPrice = ticket.getTotalPrice() + (float)(20*passengerCount);
+        
+        // take the seats from the remaining capacity of each segment of the journey: the
+        // bookings of overlapping journeys wait for each other from here until the commit
+        if(!reserveCapacity(connection, context.getRoute(), trainNumber, departureDate, context.getPeriod(), context.getFrom(), context.getTo(), tClass, passengerCount)) {
+            connection.rollback();
+            return null;
+        }
+        
+        // get the available seats for that train, section, date and class
+        SeatInventory inventory = getSeatInventory(context, trainNumber, departureDate);
+        BitSet availableSeats = inventory.free(departureStation, arrivalStation, tClass);
+        
+        // the number of available seats must be greater or equal to the number of people
+        // (they may be fewer than the remaining capacity because of the seats held)
+        if(availableSeats.cardinality() < passengerCount) {
+            connection.rollback();
+            return null;
+        }
+        
+        // book the seats
+        SeatSet bookedSeats = bookSeats(passengerCount, inventory, context, availableSeats);
+        
+        // create booking (that has been created now)
+        Calendar cal = Calendar.getInstance();
+        Booking booking = new Booking(customerEmail, bookingPrice, cal.getTime(), bookedSeats.toSeats());
+        
+        // storing modifications in the database
+        String bookingID = saveBooking(connection, booking, trainNumber, departureDate, departureStation, arrivalStation,
+                context.getRoute().getRank(context.getFrom()), context.getRoute().getRank(context.getTo() - 1));
+        saveBookedSeats(connection, trainNumber, bookedSeats, context.getPeriod(), bookingID);
+        
+        connection.commit();
+        capacities.add(capacityKey(trainNumber, departureDate, tClass));
+        bookingCount.incrementAndGet();
+        bookingStatements.addAndGet(context.getStatementCount());
+        return booking;
+    }
+    
+     /**
+     * Resolving the journey of a booking within the current transaction: the period
+     * of the day and the route of the train, recorded in the context, after checking
+     * that the train leaves the departure station at the given date and then serves
+     * the arrival one
+     *
+     * @param context
+     * @param trainNumber
+     * @param departureDate
+     * @param departureStation
+     * @param arrivalStation
+     *
+     * @return <code>true</code> if the journey is possible, <code>false</code> otherwise
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private boolean resolveJourney(TransactionContext context, int trainNumber, Date departureDate, String departureStation, String arrivalStation)
+        throws SQLException {
+        
+        Connection connection = context.getConnection();
+        
+        // the period of the day and the route of the train, both in memory
+        String period = getPeriodFromDate(connection, departureDate);
+        TrainRoute route = routes(connection).route(trainNumber);
+        if(period == null || route == null)
+            return false;
+        int from = route.indexOf(departureStation);
+        int to = route.indexOf(arrivalStation);
+        if(from < 0 || to <= from)
+            return false;
+        
+        // the train must leave the departure station at the given date (first departure of the day)
+        TrainTimetable timetable = getTimetable(connection, trainNumber, period);
+        if(timetable == null || timetable.getDepartureCount() == 0)
+            return false;
+        long departure = TrainTimetable.departureMillis(PeriodCalendar.toEpochDay(departureDate), timetable.getDeparture(0), ZoneId.systemDefault());
+        if(departure + timetable.getOffset(timetable.indexOf(departureStation)) * 1000L != departureDate.getTime())
+            return false;
+        
+        context.setJourney(period, periodOf(period), route, from, to);
+        return true;
+    }
+    
+     /**
+     * Choosing the "seatsNumber" seats to book among the available ones, with the
+     * current seat allocation strategy
+     * 
+     * @param seatsNumber
+     * @param inventory
+     * @param context the context of the transaction, its journey resolved
+     * @param availableSeats
+     * 
+     * @return the seats to book, packed
+     * 
+     * /!\ NO COHERENCE TEST. HAS TO BE DONE BEFORE CALLING THE METHOD
+     */
+    private SeatSet bookSeats(int seatsNumber, SeatInventory inventory, TransactionContext context, BitSet availableSeats) {
+        BitSet seats = SeatAllocator.of(seatAllocation).allocate(inventory, context.getFrom(), context.getTo(), availableSeats, seatsNumber);
+        return inventory.getLayout().toSeatSet(seats);
+    }
+    
+    /**
+     * Holds seats for a booking, in two phases: the seats are chosen and set
+     * aside in memory for a limited time (see {@link setSeatHoldTime}), without
+     * locking anything in the database; {@link confirmHold} then only saves
+     * the booking. Held seats are unavailable to the other customers of this
+     * object until the hold is confirmed, released or expired.
+     *
+     * @param trainNumber
+     * @param departureDate
+     * @param departureStation
+     * @param arrivalStation
+     * @param passengerCount
+     * @param travelClass
+     * @param customerEmail
+     *
+     * @return the hold, or <code>null</code> if some parameter was incorrect
+     * or not enough seats were available
+     *
+     * @throws DataAccessException if an unrecoverable error occurs
+     */
+    public SeatHold holdSeats(int trainNumber, Date departureDate, String departureStation, String arrivalStation, int passengerCount, Class travelClass, String customerEmail)
+        throws DataAccessException {
+        Connection connection = acquire();
+        try {
+            return holdSeats(connection, trainNumber, departureDate, departureStation, arrivalStation, passengerCount, travelClass, customerEmail);
+        }
+        finally {
+            release(connection);
+        }
+    }
+    
+     /**
+     * See holdSeats, using the specified connection
+     */
+    private SeatHold holdSeats(Connection connection, int trainNumber, Date departureDate, String departureStation, String arrivalStation, int passengerCount, Class travelClass, String customerEmail)
+        throws DataAccessException {
+        
+        if(passengerCount <= 0 || travelClass == null)         // invalid number of people or class
+            return null;
+        String tClass = TariffMatrix.nameOf(travelClass);
+        
+        SeatInventory inventory;
+        String period;
+        float amount;
+        TransactionContext context;
+        
+        // the checks and the price are read like searches: no lock is taken
+        try {
+            context = new TransactionContext(statements(connection));
+            begin(connection, readMode);
+            
+            // the date must be a departure of the train from the station, and the journey served by the train
+            if(!resolveJourney(context, trainNumber, departureDate, departureStation, arrivalStation)) {
+                connection.commit();
+                return null;
+            }
+            
+            // the booking total price (ticket + extra booking price)
+            period = context.getPeriod();
+            Ticket ticket = priceTicket(context, departureStation, arrivalStation, passengerCount, travelClass);
+            if(ticket == null) {
+                connection.commit();
+                return null;
+            }
+            amount = ticket.getTotalPrice() + (float)(20*passengerCount);
+            
+            // the seats booked on that day
+            inventory = new SeatInventory(context.getRoute(), getSeatLayout(connection, trainNumber, period));
+            getUnavailableSeats(connection, inventory, departureDate);
+            connection.commit();
+        }
+        catch(SQLException e) {
+            // making sure the transaction is aborted
+            try {
+                connection.rollback();
+            }
+            catch (SQLException ee) {
+                throw new DataAccessException("Failing rollbacking transaction in 2.1.3 (hold): " + ee.getMessage());
+            }
+            throw new DataAccessException("Error occured in 2.1.3 (hold): " + e.getMessage());
+        }
+        
+        // the seats are chosen and held at once, so that two customers never hold the same seats
+        String key = SeatHoldRegistry.key(trainNumber, departureDate);
+        synchronized(holds) {
+            holds.occupy(inventory, key);
+            BitSet seats = SeatAllocator.of(seatAllocation).allocate(inventory, context.getFrom(), context.getTo(),
+                    inventory.free(departureStation, arrivalStation, tClass), passengerCount);
+            if(seats == null)                           // not enough seats
+                return null;
+            return holds.place(key, trainNumber, departureDate, departureStation, arrivalStation, period, customerEmail, amount,
+                    inventory.getLayout().toSeatSet(seats));
+        }
+    }
+    
+    /**
+     * Confirms a hold: its seats are booked at the amount of the hold.
+     *
+     * @param holdId the ID of the hold, see {@link SeatHold#getHoldId}
+     *
+     * @return the booking, or <code>null</code> if there is no such hold, if it
+     * has expired, or if its seats were booked meanwhile by another application
+     *
+     * @throws DataAccessException if an unrecoverable error occurs
+     */
+    public Booking confirmHold(String holdId)
+        throws DataAccessException {
+        Connection connection = acquire();
+        try {
+            return confirmHold(connection, holdId);
+        }
+        finally {
+            release(connection);
+        }
+    }
+    
+     /**
+     * See confirmHold, using the specified connection
+     */
+    private Booking confirmHold(Connection connection, String holdId)
+        throws DataAccessException {
+        
+        SeatHoldRegistry.Entry entry = holds.get(holdId);
+        if(entry == null)                               // unknown or expired hold
+            return null;
+        
+        // encapsulate data queries into an ACID transaction, run again if it loses a deadlock
+        try {
+            Booking booking = transactions.run(connection, c -> confirm(new TransactionContext(statements(c)), entry));
+            holds.confirmed(entry, booking != null);
+            return booking;
+        }
+        catch(SQLException e) {
+            // making sure the transaction is aborted
+            try {
+                connection.rollback();
+            }
+            catch (SQLException ee) {
+                throw new DataAccessException("Failing rollbacking transaction in 2.1.3 (confirm): " + ee.getMessage());
+            }
+            throw new DataAccessException("Error occured in 2.1.3 (confirm): " + e.getMessage());
+        }
+    }
+    
+     /**
+     * Running one attempt of the confirmation transaction of a hold: the held
+     * seats are saved, after checking that no other application booked them
+     *
+     * @param context
+     * @param entry
+     *
+     * @return the booking, or <code>null</code> if some seat is not available anymore
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private Booking confirm(TransactionContext context, SeatHoldRegistry.Entry entry)
+        throws SQLException {
+        
+        Connection connection = context.getConnection();
+        SeatHold hold = entry.getHold();
+        SeatSet seats = entry.getSeats();
+        
+        beginBooking(connection);
+        
+        // the train and its seats on that day
+        SeatInventory inventory = newSeatInventory(connection, hold.getTrainNumber(), hold.getDepartureDate());
+        if(inventory == null) {
+            connection.commit();
+            return null;
+        }
+        TrainRoute route = inventory.getRoute();
+        int from = route.indexOf(hold.getDepartureStation());
+        int to = route.indexOf(hold.getArrivalStation());
+        if(from < 0 || to <= from) {
+            connection.commit();
+            return null;
+        }
+        
+        // take the held seats of each class from the remaining capacity of the journey
+        Map<String, Integer> counts = countByClass(inventory.getLayout(), seats);
+        if(counts == null) {
+            connection.commit();
+            return null;
+        }
+        for(Map.Entry<String, Integer> count : counts.entrySet()) {
+            if(!reserveCapacity(connection, route, hold.getTrainNumber(), hold.getDepartureDate(), entry.getPeriod(), from, to, count.getKey(), count.getValue())) {
+                connection.rollback();
+                return null;
+            }
+        }
+        
+        // the seats booked on that day, the holds of this object aside
+        getUnavailableSeats(connection, inventory, hold.getDepartureDate());
+        BitSet free = inventory.free(hold.getDepartureStation(), hold.getArrivalStation(), null);
+        for(int i = 0; i < seats.size(); i++) {
+            if(!free.get(inventory.getLayout().indexOf(seats.get(i)))) {
+                connection.rollback();
+                return null;
+            }
+        }
+        
+        // create booking (that has been created now) and store it
+        Calendar cal = Calendar.getInstance();
+        Booking booking = new Booking(hold.getCustomer(), hold.getAmount(), cal.getTime(), seats.toSeats());
+        String bookingID = saveBooking(connection, booking, hold.getTrainNumber(), hold.getDepartureDate(), hold.getDepartureStation(), hold.getArrivalStation(),
+                route.getRank(from), route.getRank(to - 1));
+        saveBookedSeats(connection, hold.getTrainNumber(), seats, entry.getPeriod(), bookingID);
+        
+        connection.commit();
+        for(String tClass : counts.keySet())
+            capacities.add(capacityKey(hold.getTrainNumber(), hold.getDepartureDate(), tClass));
+        bookingCount.incrementAndGet();
+        bookingStatements.addAndGet(context.getStatementCount());
+        return booking;
+    }
+    
+    /**
+     * Releases a hold: its seats are available again.
+     *
+     * @param holdId the ID of the hold
+     *
+     * @return <code>true</code> if the hold was released, <code>false</code> if
+     * there is no such hold or if it has expired
+     */
+    public boolean releaseHold(String holdId) {
+        return holds.release(holdId);
+    }
+    
+    /**
+     * Sets the time the next holds last before they expire. The default is 10
+     * minutes.
+     *
+     * @param minutes the hold time, in minutes
+     */
+    public void setSeatHoldTime(int minutes) {
+        if(minutes <= 0)
+            throw new IllegalArgumentException("hold time must be positive");
+        holds.setTimeToLive(minutes * 60 * 1000L);
+    }
+    
+     /**
+     * Converting a period colour, as stored in the database, into a period
+     *
+     * @param colour
+     *
+     * @return the period, <code>null</code> if the colour is unknown
+     */
+    private static Period periodOf(String colour) {
+        for(Period period : Period.values()) {
+            if(TariffMatrix.colourOf(period).equals(colour))
+                return period;
+        }
+        return null;
+    }
+    
+     /**
+     * Saving a booking into the database, with the train, the travel day and the
+     * ranks of the first and last segments of the journey, so that the bookings
+     * of a train and day are found through an index and their overlap with a
+     * journey is a range predicate
+     *
+     * @param booking
+     * @param trainNumber
+     * @param departureDate
+     * @param departureStation
+     * @param arrivalStation
+     * @param firstRank the rank of the first segment of the journey
+     * @param lastRank the rank of the last segment of the journey
+     * 
+     * @return the corresponding booking ID
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private String saveBooking(Connection connection, Booking booking, int trainNumber, Date departureDate, String departureStation, String arrivalStation, int firstRank, int lastRank)
+        throws SQLException {
+        
+        // insertion of booking
+        PreparedStatement st = prepare(connection, ""
+                + "INSERT INTO Reservation "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        st.setString(2, booking.getCustomer());
+        st.setTimestamp(3, new java.sql.Timestamp(departureDate.getTime()));
+        st.setFloat(4, booking.getAmount());
+        st.setString(5, departureStation);
+        st.setString(6, arrivalStation);
+        st.setInt(7, trainNumber);
+        st.setDate(8, travelDay(departureDate));
+        st.setInt(9, firstRank);
+        st.setInt(10, lastRank);
+        
+        // the allocator only reaches the database once per block of IDs; an ID already
+        // used by a booking made before the allocator existed is simply replaced
+        while(true) {
+            String bookingID = bookingIds.next(statements(connection));
+            st.setString(1, bookingID);
+            try {
+                st.executeUpdate();
+                return bookingID;
+            }
+            catch(SQLException e) {
+                if(!isDuplicateKey(e))
+                    throw e;
+                bookingIds.collided();
+            }
+        }
+    }
+    
+     /**
+     * Tells whether an exception reports the violation of a unique key
+     *
+     * @param e
+     *
+     * @return <code>true</code> for a duplicate key, <code>false</code> otherwise
+     */
+    private static boolean isDuplicateKey(SQLException e) {
+        // MySQL error 1062: ER_DUP_ENTRY
+        return e.getErrorCode() == 1062;
+    }
+
+     /**
+     * Saving some booked seats into the database, as a single JDBC batch: one
+     * round trip whatever the number of seats when the driver rewrites batched
+     * inserts into a multi-row INSERT (<code>rewriteBatchedStatements=true</code>
+     * with MySQL Connector/J)
+     *
+     * @param trainNumber
+     * @param bookedSeats the booked seats, packed
+     * @param period
+     * @param bookingID
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private void saveBookedSeats(Connection connection, int trainNumber, SeatSet bookedSeats, String period, String bookingID)
+        throws SQLException {
+        
+        // insertion preparation
+        PreparedStatement st = prepare(connection, ""
+                + "INSERT INTO PlaceReservee "
+                + "VALUES (?, ?, ?, ?, ?)");
+        
+        try {
+            // one batch entry per seat (each entry carries its own parameters)
+            for(int i = 0; i < bookedSeats.size(); i++) {
+                st.setInt(1, SeatSet.seatOf(bookedSeats.get(i)));
+                st.setString(2, bookingID);
+                st.setInt(3, SeatSet.carOf(bookedSeats.get(i)));
+                st.setInt(4, trainNumber);
+                st.setString(5, period);
+                st.addBatch();
+            }
+            
+            // insertions
+            for(int count : st.executeBatch()) {
+                if(count == Statement.EXECUTE_FAILED)
+                    throw new SQLException("Failed to save a booked seat of booking " + bookingID);
+            }
+        }
+        finally {
+            // the statement is cached: never leave entries behind
+            st.clearBatch();
+        }
+    }
+    
+    /**
+     * See Operation 2.1.4
+     *
+     * @param bookingID
+     * @param customerEmail
+     *
+     * @return <code>true</code> if the booking was cancelled, and
+     * <code>false</code> otherwise
+     *
+     * @throws DataAccessException if an unrecoverable error occurs
+     */
+    public boolean cancelBooking(String bookingID, String customerEmail)
+        throws DataAccessException {
+        Connection connection = acquire();
+        try {
+            return cancelBooking(connection, bookingID, customerEmail);
+        }
+        finally {
+            release(connection);
+        }
+    }
+    
+     /**
+     * See Operation 2.1.4, using the specified connection
+     */
+    private boolean cancelBooking(Connection connection, String bookingID, String customerEmail)
+        throws DataAccessException {
+        
+        // encapsulate data queries into an ACID transaction, run again if it loses a deadlock
+        try {
+            return transactions.run(connection, c -> cancel(c, bookingID, customerEmail));
+        }
+        catch(SQLException e) {
+            // making sure the transaction is aborted
+            try {
+                connection.rollback();
+            }
+            catch (SQLException ee) {
+                throw new DataAccessException("Failing rollbacking transaction in 2.1.4: " + ee.getMessage());
+            }
+            throw new DataAccessException("Error occured in 2.1.4: " + e.getMessage());
+        }
+    }
+    
+     /**
+     * Running one attempt of the cancellation transaction of Operation 2.1.4
+     *
+     * @param bookingID
+     * @param customerEmail
+     *
+     * @return <code>true</code> if the booking was cancelled, and
+     * <code>false</code> otherwise
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private boolean cancel(Connection connection, String bookingID, String customerEmail)
+        throws SQLException {
+        
+        beginBooking(connection);
+        
+        // check if the couple bookingID - customerEmail exists
+        if(!isInReservation(connection, bookingID, customerEmail) || seatsNumberWithBooking(connection, bookingID) == 0) {
+            connection.commit();
+            return false;                                           // no such booking    
+        }
+        
+        // the journey and the seats of the booking, to give them back to the remaining capacity
+        java.sql.Date travelDay = null;
+        int trainNumber = 0;
+        int firstRank = 0;
+        int lastRank = 0;
+        String period = null;
+        List<Integer> bookedSeats = new ArrayList<Integer>();
+        PreparedStatement st = prepare(connection, ""
+                + "SELECT R.dateVoyage, R.numeroTrain, R.rangDebut, R.rangFin, P.couleurPeriode, P.numeroVoiture, P.numeroPlace "
+                + "FROM Reservation R JOIN PlaceReservee P USING (idReservation) "
+                + "WHERE idReservation = ?");
+        st.setString(1, bookingID);
+        try (ResultSet result = st.executeQuery()) {
+            while(result.next()) {
+                travelDay = result.getDate(1);
+                trainNumber = result.getInt(2);
+                firstRank = result.getInt(3);
+                lastRank = result.getInt(4);
+                period = result.getString(5);
+                bookedSeats.add(SeatSet.pack(result.getInt(6), result.getInt(7)));
+            }
+        }
+        
+        // first delete from PlaceReservee because of the foreign key constraints
+        st = prepare(connection, ""
+                + "DELETE FROM PlaceReservee "
+                + "WHERE idReservation = ?");
+        st.setString(1, bookingID);
+        if(st.executeUpdate() == 0) {
+            // cancelled meanwhile by another transaction
+            connection.rollback();
+            return false;
+        }
+        
+        // the seats of each class are available again on each segment of the journey
+        if(travelDay != null) {
+            int[] packed = new int[bookedSeats.size()];
+            for(int i = 0; i < packed.length; i++)
+                packed[i] = bookedSeats.get(i);
+            Map<String, Integer> counts = countByClass(getSeatLayout(connection, trainNumber, period), SeatSet.of(packed));
+            if(counts != null) {
+                for(Map.Entry<String, Integer> count : counts.entrySet())
+                    releaseCapacity(connection, trainNumber, travelDay, firstRank, lastRank, count.getKey(), count.getValue());
+            }
+        }
+        
+        // if we had ON DELETE CASCADE, normally we wouldn't have to do the following
+        // but since we don't know whether the constraint will be respected or not
+        // we decided not to put it
+        st = prepare(connection, ""
+                + "DELETE FROM Reservation "
+                + "WHERE idReservation = ? ");        // we already checked the email
+        st.setString(1, bookingID);
+        st.executeUpdate();
+        
+        // check if it succeeded
+        if(!isInReservation(connection, bookingID, customerEmail) && seatsNumberWithBooking(connection, bookingID) == 0) {
+            connection.commit();
+            return true;
+        }    
+        else {
+            connection.commit();
+            return false;
+        }
+    }
+    
+     /**
+     * Counting some seats by travel class
+     *
+     * @param layout the seats of the train
+     * @param seats the seats, packed
+     *
+     * @return the number of seats of each class, as stored in the database and in
+     * a fixed order, or <code>null</code> if some seat is not in the layout
+     */
+    private static Map<String, Integer> countByClass(SeatLayout layout, SeatSet seats) {
+        Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for(int i = 0; i < seats.size(); i++) {
+            int index = layout.indexOf(seats.get(i));
+            if(index < 0)
+                return null;
+            counts.merge(layout.getCarClass(layout.carIndexOf(index)), 1, Integer::sum);
+        }
+        return counts;
+    }
+    
+     /**
+     * Tells the number of booked seats registered for this booking ID
+     *
+     * @param bookingID
+     * 
+     * @return the number of booked seats, therefore 0 if none
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private int seatsNumberWithBooking(Connection connection, String bookingID)
+        throws SQLException {
+        
+        // query preparation
+        PreparedStatement st = prepare(connection, ""
+                + "SELECT COUNT(*) "
+                + "FROM PlaceReservee "
+                + "WHERE idReservation = ?");
+        st.setString(1, bookingID);
+        
+        try (ResultSet result = st.executeQuery()) {
+            result.next();
+            return (result.getInt(1)); 
+        }
+    }
+    
+     /**
+     * Tells if the specified booking is in the "Reservation" table
+     *
+     * @param bookingID
+     * @param customerEmail
+     * 
+     * @return <code>true</code> if the booking is in the table, and
+     * <code>false</code> otherwise
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private boolean isInReservation(Connection connection, String bookingID, String customerEmail)
+        throws SQLException {
+        
+        // query preparation
+        PreparedStatement st = prepare(connection, ""
+                + "SELECT idReservation "
+                + "FROM Reservation "
+                + "WHERE idReservation = ? AND mailClient = ?");
+        st.setString(1, bookingID);
+        st.setString(2, customerEmail);
+        
+        try (ResultSet result = st.executeQuery()) {
+            return (result.next());
+        }
+    }
+    
+     /**
+     * Reserving the capacity of a journey in the remaining-capacity counters
+     * (PlacesRestantes) of the segments it covers: a single conditional update
+     * that only locks the counters of these segments, so that the bookings of
+     * overlapping journeys wait for each other here while the other ones run
+     * concurrently. The counters of the train, day and class are created from the
+     * bookings of the day on first use.
+     *
+     * @param route
+     * @param train
+     * @param date
+     * @param period
+     * @param from the index of the departure station in the route
+     * @param to the index of the arrival station in the route
+     * @param tClass the travel class, as stored in the database
+     * @param count the number of seats
+     *
+     * @return <code>true</code> if every segment had enough seats left, and
+     * <code>false</code> otherwise, in which case the transaction must be rolled back
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private boolean reserveCapacity(Connection connection, TrainRoute route, int train, Date date, String period, int from, int to, String tClass, int count)
+        throws SQLException {
+        
+        if(!capacities.contains(capacityKey(train, date, tClass)))
+            initCapacity(connection, route, train, date, period, tClass);
+        
+        // query preparation
+        PreparedStatement st = prepare(connection, ""
+                + "UPDATE PlacesRestantes "
+                + "SET places = places - ? "
+                + "WHERE numeroTrain = ? AND "
+                + "dateVoyage = ? AND "
+                + "nomClasse = ? AND "
+                + "rang BETWEEN ? AND ? AND "
+                + "places >= ?");
+        st.setInt(1, count);
+        st.setInt(2, train);
+        st.setDate(3, travelDay(date));
+        st.setString(4, tClass);
+        st.setInt(5, route.getRank(from));
+        st.setInt(6, route.getRank(to - 1));
+        st.setInt(7, count);
+        
+        // every segment of the journey must have been updated
+        if(st.executeUpdate() == to - from)
+            return true;
+        capacityRefusals.incrementAndGet();
+        return false;
+    }
+    
+     /**
+     * Giving back the capacity of a journey to the remaining-capacity counters of
+     * the segments it covers, if they exist
+     *
+     * @param train
+     * @param date
+     * @param firstRank the rank of the first segment of the journey
+     * @param lastRank the rank of the last segment of the journey
+     * @param tClass the travel class, as stored in the database
+     * @param count the number of seats
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private void releaseCapacity(Connection connection, int train, Date date, int firstRank, int lastRank, String tClass, int count)
+        throws SQLException {
+        
+        // query preparation
+        PreparedStatement st = prepare(connection, ""
+                + "UPDATE PlacesRestantes "
+                + "SET places = places + ? "
+                + "WHERE numeroTrain = ? AND "
+                + "dateVoyage = ? AND "
+                + "nomClasse = ? AND "
+                + "rang BETWEEN ? AND ?");
+        st.setInt(1, count);
+        st.setInt(2, train);
+        st.setDate(3, travelDay(date));
+        st.setString(4, tClass);
+        st.setInt(5, firstRank);
+        st.setInt(6, lastRank);
+        st.executeUpdate();
+    }
+    
+     /**
+     * Creating the missing remaining-capacity counters of a train, day and class
+     * from the bookings of that day
+     *
+     * @param route
+     * @param train
+     * @param date
+     * @param period
+     * @param tClass the travel class, as stored in the database
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private void initCapacity(Connection connection, TrainRoute route, int train, Date date, String period, String tClass)
+        throws SQLException {
+        
+        // query preparation
+        PreparedStatement st = prepare(connection, ""
+                + "SELECT COUNT(*) "
+                + "FROM PlacesRestantes "
+                + "WHERE numeroTrain = ? AND "
+                + "dateVoyage = ? AND "
+                + "nomClasse = ?");
+        st.setInt(1, train);
+        st.setDate(2, travelDay(date));
+        st.setString(3, tClass);
+        try (ResultSet result = st.executeQuery()) {
+            result.next();
+            if(result.getInt(1) == route.getStationCount() - 1)
+                return;                                 // all the counters already exist
+        }
+        
+        // the seats of the class left on each segment
+        SeatInventory inventory = new SeatInventory(route, getSeatLayout(connection, train, period));
+        getUnavailableSeats(connection, inventory, date);
+        
+        // insertion preparation (the counters another transaction just created are kept)
+        st = prepare(connection, ""
+                + "INSERT IGNORE INTO PlacesRestantes "
+                + "VALUES (?, ?, ?, ?, ?)");
+        try {
+            for(int i = 0; i < route.getStationCount() - 1; i++) {
+                st.setInt(1, train);
+                st.setDate(2, travelDay(date));
+                st.setString(3, tClass);
+                st.setInt(4, route.getRank(i));
+                st.setInt(5, inventory.free(route.getStation(i), route.getStation(i + 1), tClass).cardinality());
+                st.addBatch();
+            }
+            st.executeBatch();
+        }
+        finally {
+            // the statement is cached: never leave entries behind
+            st.clearBatch();
+        }
+    }
+    
+     /**
+     * Getting the key of the remaining-capacity counters of a train, day and class
+     *
+     * @param train
+     * @param date
+     * @param tClass
+     *
+     * @return the key
+     */
+    private static String capacityKey(int train, Date date, String tClass) {
+        return SeatHoldRegistry.key(train, date) + "/" + tClass;
+    }
+    
+     /**
+     * Getting the travel day of a date, as stored in the database
+     *
+     * @param date
+     *
+     * @return the day
+     */
+    private static java.sql.Date travelDay(Date date) {
+        return java.sql.Date.valueOf(java.time.LocalDate.ofEpochDay(PeriodCalendar.toEpochDay(date)));
+    }
+    
+    /**
+     * Recomputes all the remaining-capacity counters from the booked seats
+     * (<code>PlaceReservee</code>), e.g. after bookings were made or cancelled
+     * by another application. The counters are only created on first use by a
+     * booking: the ones that do not exist yet are left so.
+     *
+     * @return the number of counters recomputed
+     *
+     * @throws DataAccessException if an unrecoverable error occurs
+     */
+    public int rebuildRemainingCapacity()
+        throws DataAccessException {
+        Connection connection = acquire();
+        try {
+            return rebuildRemainingCapacity(connection);
+        }
+        finally {
+            release(connection);
+        }
+    }
+    
+     /**
+     * See rebuildRemainingCapacity, using the specified connection
+     */
+    private int rebuildRemainingCapacity(Connection connection)
+        throws DataAccessException {
+        
+        // encapsulate data queries into an ACID transaction, run again if it loses a deadlock
+        try {
+            return transactions.run(connection, this::rebuildCapacity);
         }
         catch(SQLException e) {
             // making sure the transaction is aborted
@@ -861,249 +2157,322 @@ public class DataAccess {
                 connection.rollback();
             }
             catch (SQLException ee) {
-                throw new DataAccessException("Failing rollbacking transaction in 2.1.4: " + ee.getMessage());
+                throw new DataAccessException("Failing rollbacking transaction in capacity rebuild: " + ee.getMessage());
             }
-            throw new DataAccessException("Error occured in 2.1.4: " + e.getMessage());
+            throw new DataAccessException("Error occured in capacity rebuild: " + e.getMessage());
         }
     }
     
      /**
-     * Tells the number of booked seats registered for this booking ID
+     * Running one attempt of the rebuild of the remaining-capacity counters
      *
-     * @param bookingID
-     * 
-     * @return the number of booked seats, therefore 0 if none
+     * @return the number of counters recomputed
      *
      * @throws SQLException if an unrecoverable error occurs
      */
-    private int seatsNumberWithBooking(String bookingID)
+    private int rebuildCapacity(Connection connection)
         throws SQLException {
         
-        // query preparation
-        PreparedStatement st = connection.prepareStatement(""
-                + "SELECT COUNT(*) "
-                + "FROM PlaceReservee "
-                + "WHERE idReservation = ?");
-        st.setString(1, bookingID);
+        begin(connection, ReadMode.SERIALIZABLE);
         
-        ResultSet result = st.executeQuery();
-        result.next();
-        return (result.getInt(1)); 
+        // the existing counters
+        List<Object[]> counters = new ArrayList<Object[]>();
+        PreparedStatement st = prepare(connection, ""
+                + "SELECT numeroTrain, dateVoyage, nomClasse, rang "
+                + "FROM PlacesRestantes");
+        try (ResultSet result = st.executeQuery()) {
+            while(result.next())
+                counters.add(new Object[] {result.getInt(1), result.getDate(2), result.getString(3), result.getInt(4)});
+        }
+        
+        // the seats left on each segment, from the bookings of each train and day
+        Map<String, SeatInventory> inventories = new HashMap<String, SeatInventory>();
+        st = prepare(connection, ""
+                + "UPDATE PlacesRestantes "
+                + "SET places = ? "
+                + "WHERE numeroTrain = ? AND "
+                + "dateVoyage = ? AND "
+                + "nomClasse = ? AND "
+                + "rang = ?");
+        int count = 0;
+        try {
+            for(Object[] counter : counters) {
+                int train = (Integer)counter[0];
+                java.sql.Date day = (java.sql.Date)counter[1];
+                String key = SeatHoldRegistry.key(train, day);
+                if(!inventories.containsKey(key)) {
+                    SeatInventory inventory = newSeatInventory(connection, train, day);
+                    if(inventory != null)
+                        getUnavailableSeats(connection, inventory, day);
+                    inventories.put(key, inventory);
+                }
+                SeatInventory inventory = inventories.get(key);
+                TrainRoute route = (inventory == null) ? null : inventory.getRoute();
+                int segment = -1;
+                for(int i = 0; route != null && i < route.getStationCount() - 1; i++) {
+                    if(route.getRank(i) == (Integer)counter[3])
+                        segment = i;
+                }
+                if(segment < 0)                         // the train doesn't travel that day anymore
+                    continue;
+                st.setInt(1, inventory.free(route.getStation(segment), route.getStation(segment + 1), (String)counter[2]).cardinality());
+                st.setInt(2, train);
+                st.setDate(3, day);
+                st.setString(4, (String)counter[2]);
+                st.setInt(5, (Integer)counter[3]);
+                st.addBatch();
+                count++;
+            }
+            st.executeBatch();
+        }
+        finally {
+            // the statement is cached: never leave entries behind
+            st.clearBatch();
+        }
+        
+        connection.commit();
+        return count;
     }
     
      /**
-     * Tells if the specified booking is in the "Reservation" table
+     * Getting the seats of the specified train during the specified period, from
+     * the cache or else from the database
      *
-     * @param bookingID
-     * @param customerEmail
+     * @param train
+     * @param period
      * 
-     * @return <code>true</code> if the booking is in the table, and
-     * <code>false</code> otherwise
+     * @return the corresponding layout, without any car if the train does not travel in this period
      *
      * @throws SQLException if an unrecoverable error occurs
      */
-    private boolean isInReservation(String bookingID, String customerEmail)
+    private SeatLayout getSeatLayout(Connection connection, int train, String period)
         throws SQLException {
         
+        String key = train + "/" + period;
+        SeatLayout layout = seatLayouts.get(key);
+        if(layout != null && !layout.isExpired())
+            return layout;
+        
         // query preparation
-        PreparedStatement st = connection.prepareStatement(""
-                + "SELECT idReservation "
-                + "FROM Reservation "
-                + "WHERE idReservation = ? AND mailClient = ?");
-        st.setString(1, bookingID);
-        st.setString(2, customerEmail);
+        PreparedStatement st = prepare(connection, ""
+                + "SELECT numeroVoiture, nomClasse, numPlaceMin, numPlaceMax "
+                + "FROM Voiture NATURAL JOIN TypeVoiture "
+                + "WHERE numeroTrain = ? AND "
+                + "couleurPeriode = ? "
+                + "ORDER BY numeroVoiture"); 
+        
+        // parameters assignments
+        st.setInt(1, train);
+        st.setString(2, period);
         
-        return (st.executeQuery().next()); 
+        // query execution: number, first seat and number of seats of each car
+        List<int[]> cars = new ArrayList<int[]>();
+        List<String> classes = new ArrayList<String>();
+        try (ResultSet result = st.executeQuery()) {
+            while(result.next()) {
+                // we have null values for min and max in double bars
+                int min = result.getInt(3);
+                int count = result.wasNull() ? 0 : result.getInt(4) - min + 1;
+                cars.add(new int[] {result.getInt(1), min, count});
+                classes.add(result.getString(2));
+            }
+        }
+        int[] numbers = new int[cars.size()];
+        int[] firstSeats = new int[cars.size()];
+        int[] seatCounts = new int[cars.size()];
+        for(int i = 0; i < numbers.length; i++) {
+            numbers[i] = cars.get(i)[0];
+            firstSeats[i] = cars.get(i)[1];
+            seatCounts[i] = cars.get(i)[2];
+        }
+        layout = new SeatLayout(train, period, numbers, classes.toArray(new String[classes.size()]), firstSeats, seatCounts,
+                SeatLayout.DEFAULT_TIME_TO_LIVE_MILLIS);
+        seatLayouts.put(key, layout);
+        return layout;
     }
     
      /**
-     * Getting the rank of the segment starting from or arriving at station in the specified train journey
+     * Getting the occupancy of the seats of the specified train during the specified day,
+     * the seats held by this object being occupied
      *
      * @param train
-     * @param station
-     * @param startingFrom
+     * @param date
      * 
-     * @return the corresponding segment rank, <code>null</code> if no matching segment
+     * @return the corresponding inventory, <code>null</code> if the train does not
+     * travel during this day
      *
      * @throws SQLException if an unrecoverable error occurs
      */
-    private Integer getSegmentNumber(Integer train, String station, boolean startingFrom)
+    private SeatInventory getSeatInventory(Connection connection, int train, Date date)
         throws SQLException {
         
-        PreparedStatement st = null;
-        
-        // getting the corresponding rank
-        st = connection.prepareStatement(""
-            + "SELECT rang "
-            + "FROM Train_Segment "
-            + "WHERE numeroTrain = ? "
-            + "AND " + (startingFrom ? "gareDepart" : "gareArrivee") + "= ?");  
-        st.setInt(1, train);
-        st.setString(2, station);
-        
-        ResultSet result = st.executeQuery();
-        
-        return (result.next() ? result.getInt(1) : null);
+        // the seats of the train during the period of the day, then the seats booked or held on that day
+        SeatInventory inventory = newSeatInventory(connection, train, date);
+        if(inventory != null) {
+            getUnavailableSeats(connection, inventory, date);
+            holds.occupy(inventory, SeatHoldRegistry.key(train, date));
+        }
+        return inventory;
     }
     
      /**
-     * Getting the UNavailable seats in the specified train during the specified day and
-     * between the two specified stations
+     * Getting the occupancy of the seats of the specified train during the specified day
+     * between the specified stations, the seats held by this object being occupied; the
+     * other segments of the inventory are only partly filled
      *
      * @param train
      * @param date
      * @param beginStation
      * @param endStation
      * 
-     * @return the corresponding seats, an empty list if all seats are available
-     * 
-     * /!\ DOESN'T TEST INPUT INFORMATION COHERENCE - test before calling it
+     * @return the corresponding inventory, <code>null</code> if the train does not
+     * travel during this day or does not serve the journey
      *
      * @throws SQLException if an unrecoverable error occurs
      */
-    private List<Seat> getUnavailableSeats(Integer train, Date date, String beginStation, String endStation)
+    private SeatInventory getSeatInventory(Connection connection, int train, Date date, String beginStation, String endStation)
         throws SQLException {
         
-        // the list to return
-        List<Seat> seats = new ArrayList<Seat>();
-        
-        // decomposing the date in order to match util.Date with dates in SQL
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        int year = cal.get(Calendar.YEAR);
-        int month = cal.get(Calendar.MONTH) + 1;        // 0 => 11 otherwise
-        int day = cal.get(Calendar.DAY_OF_MONTH);
-        
-        // query preparation
-        PreparedStatement st = connection.prepareStatement(""
-                + "SELECT numeroVoiture, numeroPlace "
-                + "FROM PlaceReservee NATURAL JOIN Reservation R "
-                + "WHERE numeroTrain = ? AND "
-                + "YEAR(dateHeureDepart) = ? AND "
-                + "MONTH(dateHeureDepart) = ? AND "
-                + "DAY(dateHeureDepart) = ? AND "
-                + "NOT ((? < (SELECT rang FROM Train_Segment TS WHERE TS.gareDepart = R.gareDepart AND numeroTrain = ?) AND "
-                + "? < (SELECT rang FROM Train_Segment TS WHERE TS.gareDepart = R.gareDepart AND numeroTrain = ?)) OR "
-                + "(? > (SELECT rang FROM Train_Segment TS WHERE TS.gareArrivee = R.gareArrivee AND numeroTrain = ?) AND "
-                + "? > (SELECT rang FROM Train_Segment TS WHERE TS.gareArrivee = R.gareArrivee AND numeroTrain = ?)))"); 
-        
-        // parameters assignments
-        st.setInt(1, train);
-        st.setInt(2, year);
-        st.setInt(3, month);
-        st.setInt(4, day);
-        
-        st.setInt(5, getSegmentNumber(train, beginStation, true));          // segment starting from begin
-        st.setInt(6, train);
-        st.setInt(7, getSegmentNumber(train, endStation, false));           // segment ending to end
-        st.setInt(8, train);
-        st.setInt(9, getSegmentNumber(train, beginStation, true));          // segment starting from begin 
-        st.setInt(10, train);
-        st.setInt(11, getSegmentNumber(train, endStation, false));          // segment ending to end                
-        st.setInt(12, train);
-        
-        // query execution and return of the result
-        ResultSet result = st.executeQuery();
-        
-        while(result.next()) {
-            seats.add(new Seat(result.getInt(1), result.getInt(2))); 
-        }
-        
-        return seats;
+        // the seats of the train during the period of the day, then the seats booked on the journey or held on that day
+        SeatInventory inventory = newSeatInventory(connection, train, date);
+        if(inventory == null)
+            return null;
+        int from = inventory.getRoute().indexOf(beginStation);
+        int to = inventory.getRoute().indexOf(endStation);
+        if(from < 0 || to <= from)
+            return null;
+        getUnavailableSeats(connection, inventory, date, from, to);
+        holds.occupy(inventory, SeatHoldRegistry.key(train, date));
+        return inventory;
     }
     
      /**
-     * Getting all the seats owned by the specified train during the specified period
+     * Getting the occupancy of the seats of the specified train during the specified day
+     * within a transaction whose journey is resolved, the seats held by this object
+     * being occupied
      *
+     * @param context
      * @param train
-     * @param period
+     * @param date
      * 
-     * @return the corresponding seats, an empty list if the train does not travel in this period
+     * @return the corresponding inventory
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private SeatInventory getSeatInventory(TransactionContext context, int train, Date date)
+        throws SQLException {
+        SeatInventory inventory = new SeatInventory(context.getRoute(), getSeatLayout(context.getConnection(), train, context.getPeriod()));
+        getUnavailableSeats(context.getConnection(), inventory, date);
+        holds.occupy(inventory, SeatHoldRegistry.key(train, date));
+        return inventory;
+    }
+    
+     /**
+     * Getting an inventory of the seats of the specified train during the specified
+     * day where all the seats are free
+     *
+     * @param train
+     * @param date
      * 
+     * @return the corresponding inventory, <code>null</code> if the train does not
+     * travel during this day
      *
      * @throws SQLException if an unrecoverable error occurs
      */
-    private List<Seat> getSeats(Integer train, String period)
+    private SeatInventory newSeatInventory(Connection connection, int train, Date date)
+        throws SQLException {
+        String period = getPeriodFromDate(connection, date);
+        TrainRoute route = routes(connection).route(train);
+        if(period == null || route == null)
+            return null;
+        return new SeatInventory(route, getSeatLayout(connection, train, period));
+    }
+    
+     /**
+     * Marking the seats booked in the specified train during the specified day as
+     * occupied in its inventory, on the segments of each booking
+     *
+     * @param inventory
+     * @param date
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private void getUnavailableSeats(Connection connection, SeatInventory inventory, Date date)
+        throws SQLException {
+        TrainRoute route = inventory.getRoute();
+        getUnavailableSeats(connection, inventory, date, 0, route.getStationCount() - 1);
+    }
+    
+     /**
+     * Marking the seats booked in the specified train during the specified day between
+     * the specified stations as occupied in its inventory, on the segments of each
+     * booking; the bookings that do not overlap the journey are not read
+     *
+     * @param inventory
+     * @param date
+     * @param from the index of the departure station in the route
+     * @param to the index of the arrival station in the route
+     *
+     * @throws SQLException if an unrecoverable error occurs
+     */
+    private void getUnavailableSeats(Connection connection, SeatInventory inventory, Date date, int from, int to)
         throws SQLException {
         
-        // the list to return
-        List<Seat> seats = new ArrayList<Seat>();
-        
-        // query preparation
-        PreparedStatement st = connection.prepareStatement(""
-                + "SELECT numeroVoiture, numPlaceMin, numPlaceMax "
-                + "FROM Voiture NATURAL JOIN TypeVoiture "
-                + "WHERE numeroTrain = ? AND "
-                + "couleurPeriode = ? "
-                + "ORDER BY numeroVoiture"); 
+        // query preparation: the bookings of the train and day through the (numeroTrain, dateVoyage) index,
+        // the ones overlapping the journey being those whose segments range meets the journey's
+        PreparedStatement st = prepare(connection, ""
+                + "SELECT P.numeroVoiture, P.numeroPlace, R.rangDebut, R.rangFin "
+                + "FROM Reservation R JOIN PlaceReservee P USING (idReservation) "
+                + "WHERE R.numeroTrain = ? AND "
+                + "R.dateVoyage = ? AND "
+                + "R.rangDebut <= ? AND "
+                + "R.rangFin >= ?"); 
         
         // parameters assignments
-        st.setInt(1, train);
-        st.setString(2, period);
+        TrainRoute route = inventory.getRoute();
+        st.setInt(1, route.getTrain());
+        st.setDate(2, travelDay(date));
+        st.setInt(3, route.getRank(to - 1));
+        st.setInt(4, route.getRank(from));
         
         // query execution
-        ResultSet result = st.executeQuery();
-        
-        // compute the list of seats
-        while(result.next()) {
-            // we have null values for min and max in double bars
-            result.getInt(2);
-            if(!result.wasNull()) {     // if there was a minimum seat number
-                for(int i = result.getInt(2); i <= result.getInt(3); i++) {          // from min to max
-                    seats.add(new Seat(result.getInt(1), i)); 
-                }    
+        try (ResultSet result = st.executeQuery()) {
+            while(result.next()) {
+                inventory.occupySegments(result.getInt(1), result.getInt(2), result.getInt(3), result.getInt(4));
             }
         }
-        
-        return seats;
     }
-
+    
      /**
-     * Getting all the seats owned by the specified train during the specified period
-     * Note: in this version we only want the seats in cars of the specified class
-     * @param train
-     * @param period
-     * @param travelClass
-     * 
-     * @return the corresponding seats, an empty list if the train does not travel in this period
-     * 
+     * Marking the seats booked in several trains during a range of days as occupied
+     * in their inventories (one query whatever the number of trains and days)
+     *
+     * @param inventories the inventories, by train number and day ("train/day", the day
+     * in days since the epoch); the bookings of the other trains and days are ignored
+     * @param first a date of the first day
+     * @param last a date of the last day
+     *
      * @throws SQLException if an unrecoverable error occurs
      */
-    private List<Seat> getSeats(Integer train, String period, String travelClass)
+    private void getUnavailableSeats(Connection connection, Map<String, SeatInventory> inventories, Date first, Date last)
         throws SQLException {
         
-        // the list to return
-        List<Seat> seats = new ArrayList<Seat>();
-        
-        // query preparation
-        PreparedStatement st = connection.prepareStatement(""
-                + "SELECT numeroVoiture, numPlaceMin, numPlaceMax "
-                + "FROM Voiture NATURAL JOIN TypeVoiture "
-                + "WHERE numeroTrain = ? AND "
-                + "couleurPeriode = ? AND "
-                + "nomClasse = ? "
-                + "ORDER BY numeroVoiture"); 
-        
-        // parameters assignments
-        st.setInt(1, train);
-        st.setString(2, period);
-        st.setString(3, travelClass);
-        
-        // query execution
-        ResultSet result = st.executeQuery();
-        
-        // compute the list of seats
-        while(result.next()) {
-            // we have null values for min and max in double bars
-            result.getInt(2);
-            if(!result.wasNull()) {     // if there was a minimum seat number
-                for(int i = result.getInt(2); i <= result.getInt(3); i++) {          // from min to max
-                    seats.add(new Seat(result.getInt(1), i)); 
-                }    
+        // query preparation: the bookings of the range of days through the dateVoyage index
+        PreparedStatement st = prepare(connection, ""
+                + "SELECT R.numeroTrain, R.dateVoyage, P.numeroVoiture, P.numeroPlace, R.rangDebut, R.rangFin "
+                + "FROM Reservation R JOIN PlaceReservee P USING (idReservation) "
+                + "WHERE R.dateVoyage BETWEEN ? AND ?"); 
+        st.setDate(1, travelDay(first));
+        st.setDate(2, travelDay(last));
+        
+        // query execution: each booking goes to the inventory of its train and day
+        try (ResultSet result = st.executeQuery()) {
+            while(result.next()) {
+                SeatInventory inventory = inventories.get(result.getInt(1) + "/" + PeriodCalendar.toEpochDay(result.getDate(2)));
+                if(inventory != null)
+                    inventory.occupySegments(result.getInt(3), result.getInt(4), result.getInt(5), result.getInt(6));
             }
         }
-        
-        return seats;
     }
     
     /**
@@ -1121,32 +2490,63 @@ public class DataAccess {
      */
     public List<Seat> getAvailableSeats(int trainNumber, Date departureDate, String beginStation, String endStation)
         throws DataAccessException {
+        return getAvailableSeats(trainNumber, departureDate, beginStation, endStation, readMode);
+    }
+    
+    /**
+     * See Operation 2.2.2, reading the database in the specified mode rather
+     * than in the default one of this object (see {@link setReadMode}).
+     *
+     * @param trainNumber
+     * @param departureDate
+     * @param beginStation
+     * @param endStation
+     * @param mode the read mode to use for this call
+     *
+     * @return the list of available seats, including the empty list if no seat
+     * is available
+     *
+     * @throws DataAccessException if an unrecoverable error occurs
+     */
+    public List<Seat> getAvailableSeats(int trainNumber, Date departureDate, String beginStation, String endStation, ReadMode mode)
+        throws DataAccessException {
+        Connection connection = acquire();
+        try {
+            return getAvailableSeats(connection, trainNumber, departureDate, beginStation, endStation, mode);
+        }
+        finally {
+            release(connection);
+        }
+    }
+    
+     /**
+     * See Operation 2.2.2, using the specified connection
+     */
+    private List<Seat> getAvailableSeats(Connection connection, int trainNumber, Date departureDate, String beginStation, String endStation, ReadMode mode)
+        throws DataAccessException {
         
         // the list to return
         List<Seat> availableSeats = new ArrayList<Seat>();
         
-        // temporary list of the UNavailable seats
-        List<Seat> unavailableSeats = new ArrayList<Seat>();
-        
         // encapsulate data queries into an ACID transaction 
         try {
-            connection.setAutoCommit(false);
-            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            begin(connection, mode);
             
             // we first check that the wanted journey (stations + period) is possible with the given train
-            List<Integer> trains = getTrainsMatchingJourney(beginStation, endStation, getPeriodFromDate(departureDate)); 
-            if(trains == null || !trains.contains(trainNumber)) {
+            if(!trainMatchesJourney(connection, trainNumber, beginStation, endStation, getPeriodFromDate(connection, departureDate))) {
                 // this train doesn't match the journey
                 connection.commit();
                 return availableSeats;
             }
             
-            // now that we know the journey is possible: get the total seats of the train during the period
-            availableSeats = getSeats(trainNumber, getPeriodFromDate(departureDate));
-            // then the unavailable seat during this day and between the two specified stations
-            unavailableSeats = getUnavailableSeats(trainNumber, departureDate, beginStation, endStation);           
-            // the available seats are the total ones minus the unavailable ones
-            availableSeats.removeAll(unavailableSeats);  
+            // now that we know the journey is possible: the seats of the train that are not booked
+            // on any segment between the two stations during this day, as a bitset
+            SeatInventory inventory = getSeatInventory(connection, trainNumber, departureDate, beginStation, endStation);
+            BitSet free = inventory.free(beginStation, endStation, null);
+            // ending the transaction so that the connection holds no lock once released
+            connection.commit();
+            // the seats are only built for the caller
+            availableSeats = inventory.getLayout().toSeatSet(free).toSeats();
         }
         catch(SQLException e) {
             // making sure the transaction is aborted
@@ -1162,47 +2562,52 @@ public class DataAccess {
     }
     
     /**
-     * get the available seats in the specified class
-     * (overloading 2.2.2 in order not to modify DataAccess' interface)
+     * Like Operation 2.2.2, but only counts the available seats, in all the
+     * classes or in the specified one, without building them.
+     *
      * @param trainNumber
      * @param departureDate
      * @param beginStation
      * @param endStation
-     * @param travelClass
+     * @param travelClass the class of the seats to count, <code>null</code> for
+     * all the seats
      *
-     * @return the list of available seats, including the empty list if no seat
-     * is available
+     * @return the number of available seats, 0 if the train doesn't match the journey
      *
      * @throws DataAccessException if an unrecoverable error occurs
      */
-    private List<Seat> getAvailableSeats(int trainNumber, Date departureDate, String beginStation, String endStation, String travelClass)
+    public int getAvailableSeatCount(int trainNumber, Date departureDate, String beginStation, String endStation, Class travelClass)
+        throws DataAccessException {
+        Connection connection = acquire();
+        try {
+            return getAvailableSeatCount(connection, trainNumber, departureDate, beginStation, endStation, travelClass);
+        }
+        finally {
+            release(connection);
+        }
+    }
+    
+     /**
+     * See getAvailableSeatCount, using the specified connection
+     */
+    private int getAvailableSeatCount(Connection connection, int trainNumber, Date departureDate, String beginStation, String endStation, Class travelClass)
         throws DataAccessException {
-        
-        // the list to return
-        List<Seat> availableSeats = new ArrayList<Seat>();
-        
-        // temporary list of the UNavailable seats
-        List<Seat> unavailableSeats = new ArrayList<Seat>();
         
         // encapsulate data queries into an ACID transaction 
         try {
-            connection.setAutoCommit(false);
-            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            begin(connection, readMode);
             
             // we first check that the wanted journey (stations + period) is possible with the given train
-            List<Integer> trains = getTrainsMatchingJourney(beginStation, endStation, getPeriodFromDate(departureDate)); 
-            if(trains == null || !trains.contains(trainNumber)) {
+            if(!trainMatchesJourney(connection, trainNumber, beginStation, endStation, getPeriodFromDate(connection, departureDate))) {
                 // this train doesn't match the journey
                 connection.commit();
-                return availableSeats;
+                return 0;
             }
             
-            // get the total seats of the train during the period MATCHING THE RIGHT class
-            availableSeats = getSeats(trainNumber, getPeriodFromDate(departureDate), travelClass);
-            // then the unavailable seat during this day and between the two specified stations
-            unavailableSeats = getUnavailableSeats(trainNumber, departureDate, beginStation, endStation);           
-            // the available seats are the total ones minus the unavailable ones
-            availableSeats.removeAll(unavailableSeats);  
+            // then the seats of the class that are not booked between the two stations during this day
+            SeatInventory inventory = getSeatInventory(connection, trainNumber, departureDate, beginStation, endStation);
+            connection.commit();
+            return inventory.free(beginStation, endStation, travelClass == null ? null : TariffMatrix.nameOf(travelClass)).cardinality();
         }
         catch(SQLException e) {
             // making sure the transaction is aborted
@@ -1210,11 +2615,154 @@ public class DataAccess {
                 connection.rollback();
             }
             catch (SQLException ee) {
-                throw new DataAccessException("Failing rollbacking transaction in 2.2.2: " + ee.getMessage());
+                throw new DataAccessException("Failing rollbacking transaction in 2.2.2 (count): " + ee.getMessage());
             }
-            throw new DataAccessException("Error occured in 2.2.2: " + e.getMessage());
+            throw new DataAccessException("Error occured in 2.2.2 (count): " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Counts the available seats of each of the specified journeys, e.g. the
+     * ones returned by Operation 2.1.1, in all the classes or in the specified
+     * one. The bookings of all the journeys are read at once.
+     *
+     * @param journeys
+     * @param travelClass the class of the seats to count, <code>null</code> for
+     * all the seats
+     *
+     * @return the number of available seats of each journey, in the order of
+     * the journeys, 0 for the journeys that no train matches
+     *
+     * @throws DataAccessException if an unrecoverable error occurs
+     */
+    public int[] getAvailableSeatCounts(List<Journey> journeys, Class travelClass)
+        throws DataAccessException {
+        Connection connection = acquire();
+        try {
+            return getAvailableSeatCounts(connection, journeys, travelClass);
+        }
+        finally {
+            release(connection);
+        }
+    }
+    
+     /**
+     * See getAvailableSeatCounts, using the specified connection
+     */
+    private int[] getAvailableSeatCounts(Connection connection, List<Journey> journeys, Class travelClass)
+        throws DataAccessException {
+        
+        // the counts to return
+        int[] counts = new int[journeys.size()];
+        if(journeys.isEmpty())
+            return counts;
+        String tClass = (travelClass == null) ? null : TariffMatrix.nameOf(travelClass);
+        
+        // encapsulate data queries into an ACID transaction 
+        try {
+            begin(connection, readMode);
+            
+            // an empty inventory per train and day, and the range of days to read
+            Map<String, SeatInventory> inventories = new HashMap<String, SeatInventory>();
+            Date first = null;
+            Date last = null;
+            for(Journey journey : journeys) {
+                String key = SeatHoldRegistry.key(journey.getTrainNumber(), journey.getDepartureDate());
+                if(!inventories.containsKey(key))
+                    inventories.put(key, newSeatInventory(connection, journey.getTrainNumber(), journey.getDepartureDate()));
+                if(first == null || journey.getDepartureDate().before(first))
+                    first = journey.getDepartureDate();
+                if(last == null || journey.getDepartureDate().after(last))
+                    last = journey.getDepartureDate();
+            }
+            
+            // then the bookings of all these days at once, and the holds
+            getUnavailableSeats(connection, inventories, first, last);
+            connection.commit();
+            for(Map.Entry<String, SeatInventory> entry : inventories.entrySet()) {
+                if(entry.getValue() != null)
+                    holds.occupy(entry.getValue(), entry.getKey());
+            }
+            
+            // the counts are computed in memory
+            for(int i = 0; i < counts.length; i++) {
+                Journey journey = journeys.get(i);
+                SeatInventory inventory = inventories.get(SeatHoldRegistry.key(journey.getTrainNumber(), journey.getDepartureDate()));
+                if(inventory != null)
+                    counts[i] = inventory.free(journey.getDepartureStation(), journey.getArrivalStation(), tClass).cardinality();
+            }
+        }
+        catch(SQLException e) {
+            // making sure the transaction is aborted
+            try {
+                connection.rollback();
+            }
+            catch (SQLException ee) {
+                throw new DataAccessException("Failing rollbacking transaction in 2.2.2 (counts): " + ee.getMessage());
+            }
+            throw new DataAccessException("Error occured in 2.2.2 (counts): " + e.getMessage());
+        }
+        return counts;
+    }
+    
+    /**
+     * Returns the number of available seats of the specified train during the
+     * specified day between every two stations of its route, in each class. The
+     * bookings of the train are read once and the counts computed in memory.
+     *
+     * @param trainNumber
+     * @param departureDate
+     *
+     * @return the matrix of the counts, <code>null</code> if the train doesn't
+     * travel during this day
+     *
+     * @throws DataAccessException if an unrecoverable error occurs
+     */
+    public AvailabilityMatrix getAvailabilityMatrix(int trainNumber, Date departureDate)
+        throws DataAccessException {
+        Connection connection = acquire();
+        try {
+            return getAvailabilityMatrix(connection, trainNumber, departureDate);
+        }
+        finally {
+            release(connection);
+        }
+    }
+    
+     /**
+     * See getAvailabilityMatrix, using the specified connection
+     */
+    private AvailabilityMatrix getAvailabilityMatrix(Connection connection, int trainNumber, Date departureDate)
+        throws DataAccessException {
+        
+        // encapsulate data queries into an ACID transaction 
+        try {
+            begin(connection, readMode);
+            SeatInventory inventory = getSeatInventory(connection, trainNumber, departureDate);
+            connection.commit();
+            if(inventory == null)
+                return null;
+            
+            // the counts of each class are computed in memory
+            TrainRoute route = inventory.getRoute();
+            String[] stations = new String[route.getStationCount()];
+            for(int i = 0; i < stations.length; i++)
+                stations[i] = route.getStation(i);
+            int[][] counts = new int[Class.values().length][];
+            for(Class travelClass : Class.values())
+                counts[travelClass.ordinal()] = inventory.freeCounts(TariffMatrix.nameOf(travelClass));
+            return new AvailabilityMatrix(trainNumber, departureDate, stations, counts);
+        }
+        catch(SQLException e) {
+            // making sure the transaction is aborted
+            try {
+                connection.rollback();
+            }
+            catch (SQLException ee) {
+                throw new DataAccessException("Failing rollbacking transaction in 2.2.2 (matrix): " + ee.getMessage());
+            }
+            throw new DataAccessException("Error occured in 2.2.2 (matrix): " + e.getMessage());
         }
-        return availableSeats;
     }
 
     /**
@@ -1225,7 +2773,19 @@ public class DataAccess {
      * @throws DataAccessException if an unrecoverable error occurs
      */
     public void close() throws DataAccessException {
-        // Closing the connection
+        // the cached statements are closed along with their connection
+        synchronized(statementCaches) {
+            statementCaches.clear();
+        }
+        holds.close();
+        ForkJoinPool parallel = searchPool;
+        if(parallel != null)
+            parallel.shutdown();
+        // Closing the pool, or the dedicated connection
+        if(pool != null) {
+            pool.close();
+            return;
+        }
     	try {
     		connection.close();
     	}
@@ -0,0 +1,53 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The description of a journey made of one or several trains: each leg is a
+ * {@link Journey} on a single train, and the arrival station of a leg is the
+ * departure station of the next one.
+ */
+public class Itinerary {
+
+    private final List<Journey> legs;
+
+    public Itinerary(List<Journey> legs) {
+        if (legs.isEmpty()) {
+            throw new IllegalArgumentException("at least one leg expected");
+        }
+        this.legs = Collections.unmodifiableList(new ArrayList<Journey>(legs));
+    }
+
+    @Override
+    public String toString() {
+        return "Itinerary{" + "transferCount=" + getTransferCount() + ", legs=" + legs + '}';
+    }
+
+    public List<Journey> getLegs() {
+        return legs;
+    }
+
+    public int getTransferCount() {
+        return legs.size() - 1;
+    }
+
+    public String getDepartureStation() {
+        return legs.get(0).getDepartureStation();
+    }
+
+    public String getArrivalStation() {
+        return legs.get(legs.size() - 1).getArrivalStation();
+    }
+
+    public Date getDepartureDate() {
+        return legs.get(0).getDepartureDate();
+    }
+
+    public Date getArrivalDate() {
+        return legs.get(legs.size() - 1).getArrivalDate();
+    }
+
+}
@@ -0,0 +1,245 @@
+package model;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable in-memory copy of the period calendar, i.e. of the
+ * <code>PlageDates</code> table, which tells the period colour of each day.
+ * <p>
+ * Date ranges are stored as sorted arrays of day numbers (days since the
+ * epoch), so that the colour of a day is found by binary search and the
+ * colours of a whole range of days by a single sweep. The ranges must not
+ * overlap; days outside any range have no colour.
+ */
+class PeriodCalendar {
+
+    //
+    // CONSTANTS
+    //
+    // default time after which the calendar is read again from the database
+    static final long DEFAULT_TIME_TO_LIVE_MILLIS = 5 * 60 * 1000L;
+
+    //
+    // FIELDS
+    //
+    // first and last day (both included) and colour of each range, by first day
+    private final long[] starts;
+    private final long[] ends;
+    private final String[] colours;
+    private final long expiresAt;
+
+    //
+    // CONSTRUCTORS
+    //
+    private PeriodCalendar(long[] starts, long[] ends, String[] colours, long expiresAt) {
+        this.starts = starts;
+        this.ends = ends;
+        this.colours = colours;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Reads the period calendar from the database.
+     *
+     * @param statements the statements of the connection to use
+     * @param timeToLiveMillis the time after which the calendar is expired
+     *
+     * @return the calendar
+     *
+     * @throws SQLException if the calendar cannot be read, or if two date
+     * ranges overlap
+     */
+    static PeriodCalendar load(StatementCache statements, long timeToLiveMillis) throws SQLException {
+        List<long[]> ranges = new ArrayList<long[]>();
+        List<String> names = new ArrayList<String>();
+        try (PreparedStatement st = statements.prepareUncached(""
+                + "SELECT debut, fin, couleurPeriode "
+                + "FROM PlageDates "
+                + "ORDER BY debut");
+             ResultSet result = st.executeQuery()) {
+            while (result.next()) {
+                ranges.add(new long[] {
+                    result.getDate(1).toLocalDate().toEpochDay(),
+                    result.getDate(2).toLocalDate().toEpochDay()
+                });
+                names.add(result.getString(3));
+            }
+        }
+
+        try {
+            return of(ranges, names, timeToLiveMillis);
+        } catch (IllegalArgumentException e) {
+            throw new SQLException("overlapping date ranges in PlageDates: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a calendar from the specified date ranges.
+     *
+     * @param ranges the first and last day (both included) of each range, in
+     * days since the epoch, by first day
+     * @param names the colour of each range
+     * @param timeToLiveMillis the time after which the calendar is expired
+     *
+     * @return the calendar
+     *
+     * @throws IllegalArgumentException if two date ranges overlap
+     */
+    static PeriodCalendar of(List<long[]> ranges, List<String> names, long timeToLiveMillis) {
+        int n = ranges.size();
+        long[] starts = new long[n];
+        long[] ends = new long[n];
+        String[] colours = names.toArray(new String[n]);
+        for (int i = 0; i < n; i++) {
+            starts[i] = ranges.get(i)[0];
+            ends[i] = ranges.get(i)[1];
+            if (i > 0 && starts[i] <= ends[i - 1]) {
+                throw new IllegalArgumentException(LocalDate.ofEpochDay(starts[i - 1]) + " and "
+                    + LocalDate.ofEpochDay(starts[i]));
+            }
+        }
+        return new PeriodCalendar(starts, ends, colours, System.currentTimeMillis() + timeToLiveMillis);
+    }
+
+    //
+    // METHODS
+    //
+    /**
+     * Tells whether this copy of the calendar is too old to be used.
+     *
+     * @return <code>true</code> if the calendar must be read again
+     */
+    boolean isExpired() {
+        return System.currentTimeMillis() >= expiresAt;
+    }
+
+    /**
+     * Returns the number of date ranges in the calendar.
+     *
+     * @return the number of ranges
+     */
+    int size() {
+        return starts.length;
+    }
+
+    /**
+     * Returns the colour of the specified day.
+     *
+     * @param day the day, in days since the epoch
+     *
+     * @return the colour, as stored in the database, or <code>null</code> if
+     * the day belongs to no period
+     */
+    String periodOf(long day) {
+        // last range starting on or before the day
+        int low = 0;
+        int high = starts.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] <= day) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return (found >= 0 && day <= ends[found]) ? colours[found] : null;
+    }
+
+    /**
+     * Returns the colour of the day of the specified date, in the default
+     * time zone.
+     *
+     * @param date the date
+     *
+     * @return the colour, or <code>null</code> if the day belongs to no period
+     */
+    String periodOf(Date date) {
+        return periodOf(toEpochDay(date));
+    }
+
+    /**
+     * Returns the colour of each day of the specified range.
+     *
+     * @param from the first day, in days since the epoch
+     * @param to the last day (included)
+     *
+     * @return the colours, the one of day <code>from + i</code> at index
+     * <code>i</code>, <code>null</code> for the days that belong to no period
+     */
+    String[] periodsFor(long from, long to) {
+        if (to < from) {
+            return new String[0];
+        }
+        String[] result = new String[(int) (to - from + 1)];
+        for (int i = firstRangeFrom(from); i < starts.length && starts[i] <= to; i++) {
+            long first = Math.max(starts[i], from);
+            long last = Math.min(ends[i], to);
+            for (long day = first; day <= last; day++) {
+                result[(int) (day - from)] = colours[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the colours of the days of the specified range, from the date
+     * ranges it overlaps: the cost depends on the number of these ranges, not
+     * on the number of days.
+     *
+     * @param from the first day, in days since the epoch
+     * @param to the last day (included)
+     *
+     * @return the colours, a new set, empty if no day belongs to a period
+     */
+    Set<String> coloursFor(long from, long to) {
+        Set<String> result = new HashSet<String>();
+        for (int i = firstRangeFrom(from); i < starts.length && starts[i] <= to; i++) {
+            result.add(colours[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the first range that ends on or after the
+     * specified day.
+     */
+    private int firstRangeFrom(long day) {
+        int low = 0;
+        int high = starts.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] < day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the day of the specified date, in the default time zone.
+     *
+     * @param date the date
+     *
+     * @return the day, in days since the epoch
+     */
+    static long toEpochDay(Date date) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(date);
+        return LocalDate.of(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1,
+            cal.get(Calendar.DAY_OF_MONTH)).toEpochDay();
+    }
+
+}
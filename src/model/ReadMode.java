@@ -0,0 +1,25 @@
+package model;
+
+/**
+ * The way the search operations of {@link DataAccess} read the database, i.e.
+ * {@link DataAccess#getTrainTimes}, {@link DataAccess#buyTicket} and
+ * {@link DataAccess#getAvailableSeats}. Booking and cancellation always run
+ * their own transactions, whatever the mode: read committed, the bookings of
+ * overlapping journeys waiting for each other on the remaining-capacity
+ * counters of the segments they cover.
+ */
+public enum ReadMode {
+
+    /**
+     * Read-only transaction reading a consistent snapshot of the database
+     * (repeatable read). Searches take no lock, so they neither block nor
+     * get blocked by bookings.
+     */
+    SNAPSHOT,
+
+    /**
+     * Serializable read-write transaction. Searches take shared locks on
+     * every row they read.
+     */
+    SERIALIZABLE
+}
@@ -0,0 +1,357 @@
+package model;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory index of the train routes, i.e. of the
+ * <code>Train_Segment</code> table, which tells which trains go from a given
+ * station to another one.
+ * <p>
+ * Every pair of stations served by a train, in that order, is mapped to a
+ * {@link Match} telling the train route and the ranks of the segments between
+ * the two stations, so that the trains serving a journey are found without
+ * any query. When the route of a train changes, only that train is read again
+ * from the database: see {@link #invalidateTrain(int)} and
+ * {@link #refresh(StatementCache)}. Lookups may run concurrently with a refresh.
+ */
+class RouteIndex {
+
+    //
+    // CONSTANTS
+    //
+    // default time after which the index is read again from the database
+    static final long DEFAULT_TIME_TO_LIVE_MILLIS = 5 * 60 * 1000L;
+
+    //
+    // HELPER CLASSES
+    //
+    /**
+     * A train serving a pair of stations, in that order.
+     */
+    static class Match {
+
+        private final TrainRoute route;
+        private final int firstRank;
+        private final int lastRank;
+
+        Match(TrainRoute route, int firstRank, int lastRank) {
+            this.route = route;
+            this.firstRank = firstRank;
+            this.lastRank = lastRank;
+        }
+
+        TrainRoute getRoute() {
+            return route;
+        }
+
+        int getTrain() {
+            return route.getTrain();
+        }
+
+        /**
+         * Returns the rank of the segment leaving the departure station.
+         *
+         * @return the rank
+         */
+        int getFirstRank() {
+            return firstRank;
+        }
+
+        /**
+         * Returns the rank of the segment reaching the arrival station.
+         *
+         * @return the rank
+         */
+        int getLastRank() {
+            return lastRank;
+        }
+    }
+
+    //
+    // FIELDS
+    //
+    // routes by train number
+    private final Map<Integer, TrainRoute> routes = new ConcurrentHashMap<Integer, TrainRoute>();
+    // matches by departure station, then by arrival station; the lists are never modified
+    private final Map<String, Map<String, List<Match>>> matches = new ConcurrentHashMap<String, Map<String, List<Match>>>();
+    // trains whose route must be read again before the next lookup
+    private final Set<Integer> staleTrains = ConcurrentHashMap.newKeySet();
+    private final long expiresAt;
+    private final AtomicLong refreshCount = new AtomicLong();
+
+    //
+    // CONSTRUCTORS
+    //
+    private RouteIndex(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Reads the routes of all the trains from the database.
+     *
+     * @param statements the statements of the connection to use
+     * @param timeToLiveMillis the time after which the index is expired
+     *
+     * @return the index
+     *
+     * @throws SQLException if the routes cannot be read
+     */
+    static RouteIndex load(StatementCache statements, long timeToLiveMillis) throws SQLException {
+        RouteIndex index = new RouteIndex(System.currentTimeMillis() + timeToLiveMillis);
+        for (TrainRoute route : loadRoutes(statements, null)) {
+            index.add(route);
+        }
+        return index;
+    }
+
+    /**
+     * Reads the routes of one or all the trains from the database.
+     *
+     * @param statements the statements of the connection to use
+     * @param train the train number, or <code>null</code> for all the trains
+     *
+     * @return the routes, in train number order
+     *
+     * @throws SQLException if the routes cannot be read
+     */
+    private static List<TrainRoute> loadRoutes(StatementCache statements, Integer train) throws SQLException {
+        String filter = (train == null) ? "" : "WHERE numeroTrain = ? ";
+
+        // colours of the periods during which each train has departures
+        Map<Integer, Set<String>> periods = new HashMap<Integer, Set<String>>();
+        try (PreparedStatement st = statements.prepareUncached(""
+                + "SELECT DISTINCT numeroTrain, couleurPeriode "
+                + "FROM Depart "
+                + filter)) {
+            if (train != null) {
+                st.setInt(1, train);
+            }
+            try (ResultSet result = st.executeQuery()) {
+                while (result.next()) {
+                    Set<String> colours = periods.get(result.getInt(1));
+                    if (colours == null) {
+                        colours = new HashSet<String>();
+                        periods.put(result.getInt(1), colours);
+                    }
+                    colours.add(result.getString(2));
+                }
+            }
+        }
+
+        // segments of each train, in rang order (rk: we only store one segment for both directions)
+        Map<Integer, List<String>> stations = new LinkedHashMap<Integer, List<String>>();
+        Map<Integer, List<double[]>> segments = new HashMap<Integer, List<double[]>>();
+        try (PreparedStatement st = statements.prepareUncached(""
+                + "SELECT TS.numeroTrain, TS.gareDepart, TS.gareArrivee, TS.rang, TS.vitesse, S.longueur "
+                + "FROM Train_Segment TS JOIN Segment S ON "
+                + "(TS.gareDepart = S.gareDepart AND TS.gareArrivee = S.gareArrivee) OR "
+                + "(TS.gareDepart = S.gareArrivee AND TS.gareArrivee = S.gareDepart) "
+                + (train == null ? "" : "WHERE TS.numeroTrain = ? ")
+                + "ORDER BY TS.numeroTrain, TS.rang")) {
+            if (train != null) {
+                st.setInt(1, train);
+            }
+            try (ResultSet result = st.executeQuery()) {
+                while (result.next()) {
+                    int number = result.getInt(1);
+                    if (!stations.containsKey(number)) {
+                        stations.put(number, new ArrayList<String>());
+                        stations.get(number).add(result.getString(2));
+                        segments.put(number, new ArrayList<double[]>());
+                    }
+                    stations.get(number).add(result.getString(3));
+                    segments.get(number).add(new double[] {result.getInt(4), result.getDouble(5), result.getInt(6)});
+                }
+            }
+        }
+
+        List<TrainRoute> routes = new ArrayList<TrainRoute>();
+        for (Map.Entry<Integer, List<String>> entry : stations.entrySet()) {
+            int number = entry.getKey();
+            List<double[]> list = segments.get(number);
+            int[] ranks = new int[list.size()];
+            double[] speeds = new double[list.size()];
+            int[] lengths = new int[list.size()];
+            for (int i = 0; i < ranks.length; i++) {
+                ranks[i] = (int) list.get(i)[0];
+                speeds[i] = list.get(i)[1];
+                lengths[i] = (int) list.get(i)[2];
+            }
+            Set<String> colours = periods.get(number);
+            routes.add(new TrainRoute(number, entry.getValue().toArray(new String[entry.getValue().size()]),
+                ranks, speeds, lengths, colours == null ? Collections.<String>emptySet() : colours));
+        }
+        return routes;
+    }
+
+    //
+    // METHODS
+    //
+    /**
+     * Tells whether this index is too old to be used.
+     *
+     * @return <code>true</code> if the index must be read again
+     */
+    boolean isExpired() {
+        return System.currentTimeMillis() >= expiresAt;
+    }
+
+    /**
+     * Tells whether the routes of some trains must be read again before the
+     * next lookup.
+     *
+     * @return <code>true</code> if {@link #refresh(StatementCache)} has work to do
+     */
+    boolean isStale() {
+        return !staleTrains.isEmpty();
+    }
+
+    /**
+     * Returns the trains serving the specified stations, in that order.
+     *
+     * @param departureStation the departure station
+     * @param arrivalStation the arrival station
+     *
+     * @return the matches, by train number, an empty list if none
+     */
+    List<Match> matches(String departureStation, String arrivalStation) {
+        Map<String, List<Match>> arrivals = matches.get(departureStation);
+        List<Match> result = (arrivals == null) ? null : arrivals.get(arrivalStation);
+        return result == null ? Collections.<Match>emptyList() : result;
+    }
+
+    /**
+     * Returns the route of the specified train.
+     *
+     * @param train the train number
+     *
+     * @return the route, or <code>null</code> if the train has no segment
+     */
+    TrainRoute route(int train) {
+        return routes.get(train);
+    }
+
+    /**
+     * Returns the routes of all the trains.
+     *
+     * @return the routes, an unmodifiable view
+     */
+    Collection<TrainRoute> routes() {
+        return Collections.unmodifiableCollection(routes.values());
+    }
+
+    /**
+     * Marks the route of the specified train as stale: it will be read again
+     * from the database on next {@link #refresh(StatementCache)}.
+     *
+     * @param train the train number
+     */
+    void invalidateTrain(int train) {
+        staleTrains.add(train);
+    }
+
+    /**
+     * Reads again the routes of the trains marked as stale, if any.
+     *
+     * @param statements the statements of the connection to use
+     *
+     * @throws SQLException if the routes cannot be read
+     */
+    void refresh(StatementCache statements) throws SQLException {
+        if (staleTrains.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (Integer train : new ArrayList<Integer>(staleTrains)) {
+                staleTrains.remove(train);
+                remove(train);
+                for (TrainRoute route : loadRoutes(statements, train)) {
+                    add(route);
+                }
+                refreshCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Adds the index statistics to the specified map.
+     *
+     * @param statistics the map to fill in
+     */
+    void collectStatistics(Map<String, Long> statistics) {
+        long pairs = 0;
+        for (Map<String, List<Match>> arrivals : matches.values()) {
+            pairs += arrivals.size();
+        }
+        statistics.put("routes.trains", (long) routes.size());
+        statistics.put("routes.pairs", pairs);
+        statistics.put("routes.refreshes", refreshCount.get());
+    }
+
+    /**
+     * Adds the route of a train to the index, which must not contain it.
+     */
+    private synchronized void add(TrainRoute route) {
+        routes.put(route.getTrain(), route);
+        for (int from = 0; from < route.getStationCount() - 1; from++) {
+            for (int to = from + 1; to < route.getStationCount(); to++) {
+                Match match = new Match(route, route.getRank(from), route.getRank(to - 1));
+                List<Match> list = new ArrayList<Match>(matches(route.getStation(from), route.getStation(to)));
+                int i = 0;
+                while (i < list.size() && list.get(i).getTrain() < route.getTrain()) {
+                    i++;
+                }
+                list.add(i, match);
+                put(route.getStation(from), route.getStation(to), list);
+            }
+        }
+    }
+
+    /**
+     * Removes the route of a train from the index, if present.
+     */
+    private synchronized void remove(int train) {
+        TrainRoute route = routes.remove(train);
+        if (route == null) {
+            return;
+        }
+        for (int from = 0; from < route.getStationCount() - 1; from++) {
+            for (int to = from + 1; to < route.getStationCount(); to++) {
+                List<Match> list = new ArrayList<Match>(matches(route.getStation(from), route.getStation(to)));
+                for (int i = list.size() - 1; i >= 0; i--) {
+                    if (list.get(i).getTrain() == train) {
+                        list.remove(i);
+                    }
+                }
+                put(route.getStation(from), route.getStation(to), list);
+            }
+        }
+    }
+
+    private void put(String departureStation, String arrivalStation, List<Match> list) {
+        Map<String, List<Match>> arrivals = matches.get(departureStation);
+        if (arrivals == null) {
+            arrivals = new ConcurrentHashMap<String, List<Match>>();
+            matches.put(departureStation, arrivals);
+        }
+        if (list.isEmpty()) {
+            arrivals.remove(arrivalStation);
+        } else {
+            arrivals.put(arrivalStation, Collections.unmodifiableList(list));
+        }
+    }
+
+}
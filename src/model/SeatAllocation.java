@@ -0,0 +1,32 @@
+package model;
+
+/**
+ * The way {@link DataAccess#buyTicketAndBook} chooses the seats of a booking
+ * among the available ones of the wanted class.
+ */
+public enum SeatAllocation {
+
+    /**
+     * The first available seats, in car and seat number order. The first cars
+     * fill up before the next ones.
+     */
+    FIRST_FIT,
+
+    /**
+     * Consecutive seats of the same car when possible, otherwise the seats of
+     * as few cars as possible, so that groups travel together.
+     */
+    SAME_CAR,
+
+    /**
+     * The seats of the cars with the most available seats, so that all the
+     * cars fill up evenly.
+     */
+    BALANCED,
+
+    /**
+     * The seats already booked just before and just after the journey first,
+     * so that the free stretches of the seats are reused rather than split.
+     */
+    BEST_FIT
+}
@@ -0,0 +1,249 @@
+package model;
+
+import java.util.BitSet;
+
+/**
+ * Chooses the seats of a booking among the available ones, according to a
+ * {@link SeatAllocation}.
+ * <p>
+ * Seats are the indexes of the {@link SeatLayout} of the train, so that the
+ * seats of a car are a range of bits: the strategies only walk the bitsets of
+ * the inventory, car by car, and never build any {@link Seat}.
+ */
+abstract class SeatAllocator {
+
+    //
+    // HELPER CLASSES
+    //
+    // the first available seats, in index order
+    private static final class FirstFit extends SeatAllocator {
+
+        @Override
+        BitSet choose(SeatInventory inventory, int from, int to, BitSet available, int count) {
+            return take(available, 0, available.length(), new BitSet(), count);
+        }
+    }
+
+    // a block of consecutive seats in a car, else as few cars as possible
+    private static final class SameCar extends SeatAllocator {
+
+        @Override
+        BitSet choose(SeatInventory inventory, int from, int to, BitSet available, int count) {
+            SeatLayout layout = inventory.getLayout();
+            int[] freeCounts = freeCounts(layout, available);
+
+            // the shortest run of consecutive seats long enough, not to break longer ones
+            int best = -1;
+            int bestLength = Integer.MAX_VALUE;
+            for (int car = 0; car < freeCounts.length; car++) {
+                if (freeCounts[car] < count) {
+                    continue;
+                }
+                int end = layout.getCarEnd(car);
+                for (int i = available.nextSetBit(layout.getCarStart(car)); i >= 0 && i < end;
+                    i = available.nextSetBit(i)) {
+                    int runEnd = Math.min(available.nextClearBit(i), end);
+                    if (runEnd - i >= count && runEnd - i < bestLength) {
+                        best = i;
+                        bestLength = runEnd - i;
+                    }
+                    i = runEnd;
+                }
+            }
+            if (best >= 0) {
+                BitSet seats = new BitSet();
+                seats.set(best, best + count);
+                return seats;
+            }
+
+            // else the fullest car that still has enough seats
+            int car = -1;
+            for (int i = 0; i < freeCounts.length; i++) {
+                if (freeCounts[i] >= count && (car < 0 || freeCounts[i] < freeCounts[car])) {
+                    car = i;
+                }
+            }
+            if (car >= 0) {
+                return take(available, layout.getCarStart(car), layout.getCarEnd(car), new BitSet(), count);
+            }
+
+            // else the emptiest cars first
+            return takeByFreeCount(layout, available, freeCounts, count);
+        }
+    }
+
+    // the emptiest cars first
+    private static final class Balanced extends SeatAllocator {
+
+        @Override
+        BitSet choose(SeatInventory inventory, int from, int to, BitSet available, int count) {
+            SeatLayout layout = inventory.getLayout();
+            return takeByFreeCount(layout, available, freeCounts(layout, available), count);
+        }
+    }
+
+    // the seats occupied just before and just after the journey first
+    private static final class BestFit extends SeatAllocator {
+
+        @Override
+        BitSet choose(SeatInventory inventory, int from, int to, BitSet available, int count) {
+            // the ends of the route bound the free stretches as bookings do
+            int last = inventory.getRoute().getStationCount() - 1;
+            BitSet before = (from == 0) ? (BitSet) available.clone() : inventory.occupied(from - 1, from);
+            BitSet after = (to == last) ? (BitSet) available.clone() : inventory.occupied(to, to + 1);
+
+            // seats bounded on both sides, then on one side, then the others
+            BitSet both = (BitSet) before.clone();
+            both.and(after);
+            both.and(available);
+            BitSet one = before;
+            one.or(after);
+            one.and(available);
+            one.andNot(both);
+
+            BitSet seats = take(both, 0, both.length(), new BitSet(), count);
+            take(one, 0, one.length(), seats, count);
+            return take(available, 0, available.length(), seats, count);
+        }
+    }
+
+    //
+    // FIELDS
+    //
+    private static final SeatAllocator FIRST_FIT = new FirstFit();
+    private static final SeatAllocator SAME_CAR = new SameCar();
+    private static final SeatAllocator BALANCED = new Balanced();
+    private static final SeatAllocator BEST_FIT = new BestFit();
+
+    //
+    // METHODS
+    //
+    /**
+     * Returns the allocator of the specified strategy.
+     *
+     * @param allocation the strategy
+     *
+     * @return the allocator, stateless and shared
+     */
+    static SeatAllocator of(SeatAllocation allocation) {
+        switch (allocation) {
+            case FIRST_FIT:
+                return FIRST_FIT;
+            case SAME_CAR:
+                return SAME_CAR;
+            case BALANCED:
+                return BALANCED;
+            case BEST_FIT:
+                return BEST_FIT;
+            default:
+                throw new IllegalArgumentException("unknown allocation: " + allocation);
+        }
+    }
+
+    /**
+     * Chooses the seats of a booking.
+     *
+     * @param inventory the occupancy of the train
+     * @param from the index of the departure station in the route
+     * @param to the index of the arrival station, after the departure one
+     * @param available the available seats of the wanted class between the
+     * stations, left unchanged
+     * @param count the number of seats to choose
+     *
+     * @return the chosen seats, a new bitset, or <code>null</code> if fewer
+     * seats are available
+     */
+    BitSet allocate(SeatInventory inventory, int from, int to, BitSet available, int count) {
+        if (available.cardinality() < count) {
+            return null;
+        }
+        return choose(inventory, from, to, available, count);
+    }
+
+    /**
+     * Chooses the seats of a booking, enough seats being available.
+     *
+     * @param inventory the occupancy of the train
+     * @param from the index of the departure station in the route
+     * @param to the index of the arrival station
+     * @param available the available seats, not to be changed
+     * @param count the number of seats to choose
+     *
+     * @return the chosen seats, a new bitset
+     */
+    abstract BitSet choose(SeatInventory inventory, int from, int to, BitSet available, int count);
+
+    /**
+     * Adds available seats of the specified range to the chosen ones, in
+     * index order, until enough seats are chosen.
+     *
+     * @param available the available seats
+     * @param fromIndex the first index of the range
+     * @param toIndex the index following the range
+     * @param seats the chosen seats, completed
+     * @param count the number of seats to choose
+     *
+     * @return the chosen seats
+     */
+    static BitSet take(BitSet available, int fromIndex, int toIndex, BitSet seats, int count) {
+        int missing = count - seats.cardinality();
+        for (int i = available.nextSetBit(fromIndex); i >= 0 && i < toIndex && missing > 0;
+            i = available.nextSetBit(i + 1)) {
+            if (!seats.get(i)) {
+                seats.set(i);
+                missing--;
+            }
+        }
+        return seats;
+    }
+
+    /**
+     * Returns the number of available seats of each car.
+     *
+     * @param layout the seats of the train
+     * @param available the available seats
+     *
+     * @return the counts, by car index
+     */
+    static int[] freeCounts(SeatLayout layout, BitSet available) {
+        int[] counts = new int[layout.getCarCount()];
+        for (int car = 0; car < counts.length; car++) {
+            int end = layout.getCarEnd(car);
+            for (int i = available.nextSetBit(layout.getCarStart(car)); i >= 0 && i < end;
+                i = available.nextSetBit(i + 1)) {
+                counts[car]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Chooses the seats of the cars with the most available seats first.
+     *
+     * @param layout the seats of the train
+     * @param available the available seats
+     * @param freeCounts the number of available seats of each car
+     * @param count the number of seats to choose
+     *
+     * @return the chosen seats, a new bitset
+     */
+    static BitSet takeByFreeCount(SeatLayout layout, BitSet available, int[] freeCounts, int count) {
+        BitSet seats = new BitSet();
+        boolean[] used = new boolean[freeCounts.length];
+        while (seats.cardinality() < count) {
+            int car = -1;
+            for (int i = 0; i < freeCounts.length; i++) {
+                if (!used[i] && freeCounts[i] > 0 && (car < 0 || freeCounts[i] > freeCounts[car])) {
+                    car = i;
+                }
+            }
+            if (car < 0) {
+                break;
+            }
+            used[car] = true;
+            take(available, layout.getCarStart(car), layout.getCarEnd(car), seats, count);
+        }
+        return seats;
+    }
+
+}
@@ -0,0 +1,79 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Defines a hold: seats of a train set aside for a customer for a limited
+ * time, at a given amount, until the hold is confirmed into a
+ * {@link Booking}, released or expired.
+ */
+public class SeatHold {
+
+    private final String holdId;
+    private final int trainNumber;
+    private final Date departureDate;
+    private final String departureStation;
+    private final String arrivalStation;
+    private final String customer;
+    private final float amount;
+    private final List<Seat> seats;
+    private final Date expirationDate;
+
+    public SeatHold(String holdId, int trainNumber, Date departureDate, String departureStation, String arrivalStation,
+        String customer, float amount, List<Seat> seats, Date expirationDate) {
+        this.holdId = holdId;
+        this.trainNumber = trainNumber;
+        this.departureDate = departureDate;
+        this.departureStation = departureStation;
+        this.arrivalStation = arrivalStation;
+        this.customer = customer;
+        this.amount = amount;
+        this.seats = Collections.unmodifiableList(new ArrayList<Seat>(seats));
+        this.expirationDate = expirationDate;
+    }
+
+    @Override
+    public String toString() {
+        return "SeatHold{" + "holdId=" + holdId + ", trainNumber=" + trainNumber + ", departureDate=" + departureDate + ", departureStation=" + departureStation + ", arrivalStation=" + arrivalStation + ", customer=" + customer + ", amount=" + amount + ", seats=" + seats + ", expirationDate=" + expirationDate + '}';
+    }
+
+    public String getHoldId() {
+        return holdId;
+    }
+
+    public int getTrainNumber() {
+        return trainNumber;
+    }
+
+    public Date getDepartureDate() {
+        return departureDate;
+    }
+
+    public String getDepartureStation() {
+        return departureStation;
+    }
+
+    public String getArrivalStation() {
+        return arrivalStation;
+    }
+
+    public String getCustomer() {
+        return customer;
+    }
+
+    public float getAmount() {
+        return amount;
+    }
+
+    public List<Seat> getSeats() {
+        return seats;
+    }
+
+    public Date getExpirationDate() {
+        return expirationDate;
+    }
+
+}
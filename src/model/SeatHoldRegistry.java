@@ -0,0 +1,303 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The seats held in memory, by train and day, until their holds are
+ * confirmed, released or expired.
+ * <p>
+ * Held seats are occupied for the availability computed through this
+ * registry, so that two customers never hold the same seats. Expired holds
+ * are ignored as soon as they expire and removed by a background sweeper,
+ * started with the first hold. The registry is thread-safe: placing a hold
+ * and choosing its seats must be done while holding its lock, so that no
+ * other hold is placed in between.
+ */
+class SeatHoldRegistry {
+
+    //
+    // CONSTANTS
+    //
+    // default time a hold lasts
+    static final long DEFAULT_TIME_TO_LIVE_MILLIS = 10 * 60 * 1000L;
+    // time between two sweeps of the expired holds
+    static final long SWEEP_PERIOD_MILLIS = 5 * 1000L;
+
+    //
+    // HELPER CLASSES
+    //
+    /**
+     * A hold, with its packed seats and the time it expires.
+     */
+    static final class Entry {
+
+        private final SeatHold hold;
+        private final String key;
+        private final String period;
+        private final SeatSet seats;
+        private final long expiresAt;
+
+        Entry(SeatHold hold, String key, String period, SeatSet seats, long expiresAt) {
+            this.hold = hold;
+            this.key = key;
+            this.period = period;
+            this.seats = seats;
+            this.expiresAt = expiresAt;
+        }
+
+        SeatHold getHold() {
+            return hold;
+        }
+
+        String getPeriod() {
+            return period;
+        }
+
+        SeatSet getSeats() {
+            return seats;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    //
+    // FIELDS
+    //
+    private volatile long timeToLiveMillis;
+    // holds by ID, and by train and day, guarded by this
+    private final Map<String, Entry> holds = new HashMap<String, Entry>();
+    private final Map<String, List<Entry>> holdsByTrain = new HashMap<String, List<Entry>>();
+    private ScheduledExecutorService sweeper = null;
+
+    // statistics, guarded by this
+    private long placedCount = 0;
+    private long confirmedCount = 0;
+    private long releasedCount = 0;
+    private long expiredCount = 0;
+    private long conflictCount = 0;
+
+    //
+    // CONSTRUCTORS
+    //
+    /**
+     * Creates a new registry.
+     *
+     * @param timeToLiveMillis the time a hold lasts
+     */
+    SeatHoldRegistry(long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    //
+    // METHODS
+    //
+    /**
+     * Returns the key of the holds of the specified train during the day of the
+     * specified date.
+     *
+     * @param train the train number
+     * @param date any time of the day
+     *
+     * @return the key
+     */
+    static String key(int train, Date date) {
+        return train + "/" + PeriodCalendar.toEpochDay(date);
+    }
+
+    /**
+     * Sets the time the next holds will last.
+     *
+     * @param timeToLiveMillis the time, in milliseconds
+     */
+    void setTimeToLive(long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    /**
+     * Marks the seats held in a train during a day as occupied.
+     *
+     * @param inventory the inventory of the train during that day
+     * @param key the key of the train and day
+     */
+    synchronized void occupy(SeatInventory inventory, String key) {
+        List<Entry> entries = holdsByTrain.get(key);
+        if (entries == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Entry entry : entries) {
+            if (entry.isExpired(now)) {
+                continue;
+            }
+            SeatSet seats = entry.seats;
+            for (int i = 0; i < seats.size(); i++) {
+                inventory.occupy(SeatSet.carOf(seats.get(i)), SeatSet.seatOf(seats.get(i)),
+                    entry.hold.getDepartureStation(), entry.hold.getArrivalStation());
+            }
+        }
+    }
+
+    /**
+     * Holds the specified seats.
+     *
+     * @param key the key of the train and day
+     * @param trainNumber the train number
+     * @param departureDate the departure date
+     * @param departureStation the departure station
+     * @param arrivalStation the arrival station
+     * @param period the period colour of the day, as stored in the database
+     * @param customer the customer
+     * @param amount the amount of the booking to come
+     * @param seats the held seats
+     *
+     * @return the hold
+     */
+    synchronized SeatHold place(String key, int trainNumber, Date departureDate, String departureStation,
+        String arrivalStation, String period, String customer, float amount, SeatSet seats) {
+        long expiresAt = System.currentTimeMillis() + timeToLiveMillis;
+        SeatHold hold = new SeatHold(UUID.randomUUID().toString(), trainNumber, departureDate, departureStation,
+            arrivalStation, customer, amount, seats.toSeats(), new Date(expiresAt));
+        Entry entry = new Entry(hold, key, period, seats, expiresAt);
+        holds.put(hold.getHoldId(), entry);
+        List<Entry> entries = holdsByTrain.get(key);
+        if (entries == null) {
+            entries = new ArrayList<Entry>();
+            holdsByTrain.put(key, entries);
+        }
+        entries.add(entry);
+        placedCount++;
+        startSweeper();
+        return hold;
+    }
+
+    /**
+     * Returns the specified hold, if it has not expired.
+     *
+     * @param holdId the ID of the hold
+     *
+     * @return the hold, or <code>null</code> if there is no such hold or if it
+     * has expired
+     */
+    synchronized Entry get(String holdId) {
+        Entry entry = holds.get(holdId);
+        if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+            remove(entry);
+            expiredCount++;
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Removes a hold whose seats have been booked, or could not be because
+     * they were booked meanwhile.
+     *
+     * @param entry the hold
+     * @param booked <code>true</code> if the seats have been booked
+     */
+    synchronized void confirmed(Entry entry, boolean booked) {
+        remove(entry);
+        if (booked) {
+            confirmedCount++;
+        } else {
+            conflictCount++;
+        }
+    }
+
+    /**
+     * Releases the specified hold.
+     *
+     * @param holdId the ID of the hold
+     *
+     * @return <code>true</code> if the hold was released, <code>false</code>
+     * if there is no such hold or if it has expired
+     */
+    synchronized boolean release(String holdId) {
+        Entry entry = get(holdId);
+        if (entry == null) {
+            return false;
+        }
+        remove(entry);
+        releasedCount++;
+        return true;
+    }
+
+    /**
+     * Removes the expired holds.
+     *
+     * @return the number of holds removed
+     */
+    synchronized int sweep() {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (Iterator<Entry> it = holds.values().iterator(); it.hasNext();) {
+            Entry entry = it.next();
+            if (entry.isExpired(now)) {
+                it.remove();
+                removeFromTrain(entry);
+                count++;
+            }
+        }
+        expiredCount += count;
+        return count;
+    }
+
+    /**
+     * Stops the sweeper. The holds are kept.
+     */
+    synchronized void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+    }
+
+    synchronized void collectStatistics(Map<String, Long> statistics) {
+        statistics.put("holds.placed", placedCount);
+        statistics.put("holds.confirmed", confirmedCount);
+        statistics.put("holds.released", releasedCount);
+        statistics.put("holds.expired", expiredCount);
+        statistics.put("holds.conflicts", conflictCount);
+        statistics.put("holds.active", (long) holds.size());
+        statistics.put("holds.conversion.pct", placedCount == 0 ? 0L : confirmedCount * 100 / placedCount);
+    }
+
+    private void startSweeper() {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "seat-hold-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_PERIOD_MILLIS, SWEEP_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void remove(Entry entry) {
+        holds.remove(entry.hold.getHoldId());
+        removeFromTrain(entry);
+    }
+
+    private void removeFromTrain(Entry entry) {
+        List<Entry> entries = holdsByTrain.get(entry.key);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                holdsByTrain.remove(entry.key);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+package model;
+
+import java.util.BitSet;
+
+/**
+ * The occupancy of the seats of a train on a given day: one bitset of
+ * occupied seats per segment of its route, the bits being the seat indexes of
+ * the {@link SeatLayout}.
+ * <p>
+ * A seat is occupied between two stations if it is occupied on any segment
+ * between them, so the occupied seats of a journey are the union of the rows
+ * of its segments, and the free ones the complement within the wanted
+ * seats. Instances are filled once, then only read.
+ */
+class SeatInventory {
+
+    //
+    // FIELDS
+    //
+    private final TrainRoute route;
+    private final SeatLayout layout;
+    // occupied seats of the segment leaving the station at the same index of the route
+    private final BitSet[] rows;
+
+    //
+    // CONSTRUCTORS
+    //
+    /**
+     * Creates a new inventory where all the seats are free.
+     *
+     * @param route the route of the train
+     * @param layout the seats of the train during the period of the day
+     */
+    SeatInventory(TrainRoute route, SeatLayout layout) {
+        this.route = route;
+        this.layout = layout;
+        this.rows = new BitSet[route.getStationCount() - 1];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new BitSet(layout.getSeatCount());
+        }
+    }
+
+    //
+    // METHODS
+    //
+    TrainRoute getRoute() {
+        return route;
+    }
+
+    SeatLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Marks the specified seat as occupied between the specified stations.
+     * Seats and journeys the train does not have are ignored.
+     *
+     * @param car the car number
+     * @param seat the seat number
+     * @param departureStation the station the passenger gets on at
+     * @param arrivalStation the station the passenger gets off at
+     */
+    void occupy(int car, int seat, String departureStation, String arrivalStation) {
+        int index = layout.indexOf(car, seat);
+        int from = route.indexOf(departureStation);
+        int to = route.indexOf(arrivalStation);
+        if (index < 0 || from < 0 || to <= from) {
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            rows[i].set(index);
+        }
+    }
+
+    /**
+     * Marks the specified seat as occupied on the segments whose rank is
+     * within the specified range. Seats the train does not have are ignored.
+     *
+     * @param car the car number
+     * @param seat the seat number
+     * @param firstRank the rank of the first segment of the journey
+     * @param lastRank the rank of the last segment of the journey
+     */
+    void occupySegments(int car, int seat, int firstRank, int lastRank) {
+        int index = layout.indexOf(car, seat);
+        if (index < 0) {
+            return;
+        }
+        for (int i = 0; i < rows.length; i++) {
+            int rank = route.getRank(i);
+            if (rank >= firstRank && rank <= lastRank) {
+                rows[i].set(index);
+            }
+        }
+    }
+
+    /**
+     * Returns the seats occupied on any segment between the specified
+     * stations.
+     *
+     * @param from the index of the departure station in the route
+     * @param to the index of the arrival station, after the departure one
+     *
+     * @return the occupied seats, a new bitset
+     */
+    BitSet occupied(int from, int to) {
+        BitSet occupied = new BitSet(layout.getSeatCount());
+        for (int i = from; i < to; i++) {
+            occupied.or(rows[i]);
+        }
+        return occupied;
+    }
+
+    /**
+     * Returns the seats of the specified class that are free between the
+     * specified stations.
+     *
+     * @param departureStation the departure station
+     * @param arrivalStation the arrival station
+     * @param travelClass the class, as stored in the database, or
+     * <code>null</code> for all the seats
+     *
+     * @return the free seats, a new bitset, empty if the train does not serve
+     * the stations in that order
+     */
+    BitSet free(String departureStation, String arrivalStation, String travelClass) {
+        int from = route.indexOf(departureStation);
+        int to = route.indexOf(arrivalStation);
+        if (from < 0 || to <= from) {
+            return new BitSet();
+        }
+        BitSet free = layout.seatsOf(travelClass);
+        free.andNot(occupied(from, to));
+        return free;
+    }
+
+    /**
+     * Returns the number of free seats of the specified class between every
+     * two stations of the route, packed as in {@link AvailabilityMatrix}.
+     * <p>
+     * A seat is free between two stations if both lie in one of its free
+     * stretches, i.e. in a run of consecutive segments on which it is not
+     * occupied. Each stretch adds one to a square of pairs of a difference
+     * array, which is then summed up, so that the cost depends on the number
+     * of booked seats and on the square of the number of stations, not on the
+     * number of pairs times the number of seats.
+     *
+     * @param travelClass the class, as stored in the database, or
+     * <code>null</code> for all the seats
+     *
+     * @return the counts, a new array
+     */
+    int[] freeCounts(String travelClass) {
+        int stationCount = route.getStationCount();
+        int[][] differences = new int[stationCount + 1][stationCount + 1];
+        BitSet seats = layout.seatsOf(travelClass);
+
+        // seats never occupied are free along the whole route
+        BitSet booked = occupied(0, rows.length);
+        booked.and(seats);
+        addStretch(differences, 0, stationCount - 1, seats.cardinality() - booked.cardinality());
+
+        // the other ones are free between their bookings
+        for (int seat = booked.nextSetBit(0); seat >= 0; seat = booked.nextSetBit(seat + 1)) {
+            int start = 0;
+            for (int i = 0; i < rows.length; i++) {
+                if (rows[i].get(seat)) {
+                    addStretch(differences, start, i, 1);
+                    start = i + 1;
+                }
+            }
+            addStretch(differences, start, rows.length, 1);
+        }
+
+        // summing up the differences, then keeping the pairs of distinct stations
+        int[] counts = new int[AvailabilityMatrix.size(stationCount)];
+        for (int i = 0; i < stationCount; i++) {
+            for (int j = 0; j < stationCount; j++) {
+                if (i > 0) {
+                    differences[i][j] += differences[i - 1][j];
+                }
+                if (j > 0) {
+                    differences[i][j] += differences[i][j - 1];
+                }
+                if (i > 0 && j > 0) {
+                    differences[i][j] -= differences[i - 1][j - 1];
+                }
+                if (i < j) {
+                    counts[AvailabilityMatrix.indexOf(stationCount, i, j)] = differences[i][j];
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Adds the specified number of seats to all the pairs of stations between
+     * the specified ones.
+     *
+     * @param differences the difference array
+     * @param first the index of the first station of the stretch
+     * @param last the index of the last station of the stretch
+     * @param seatCount the number of seats
+     */
+    private static void addStretch(int[][] differences, int first, int last, int seatCount) {
+        // a single station is not a journey
+        if (last <= first || seatCount == 0) {
+            return;
+        }
+        differences[first][first] += seatCount;
+        differences[first][last + 1] -= seatCount;
+        differences[last + 1][first] -= seatCount;
+        differences[last + 1][last + 1] += seatCount;
+    }
+
+}
@@ -0,0 +1,248 @@
+package model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The seats of a train during the days of a given period colour, i.e. its
+ * cars (<code>Voiture</code>) and their seat numbers
+ * (<code>TypeVoiture</code>).
+ * <p>
+ * Every seat of the train has an index, car after car and seat after seat, so
+ * that a set of seats is a bitset and the seats of a car a range of bits.
+ * Instances are immutable.
+ */
+class SeatLayout {
+
+    //
+    // CONSTANTS
+    //
+    // default time after which a layout is read again from the database
+    static final long DEFAULT_TIME_TO_LIVE_MILLIS = 5 * 60 * 1000L;
+
+    //
+    // FIELDS
+    //
+    private final int train;
+    private final String period;
+    // number, class and first seat number of each car, in car number order
+    private final int[] cars;
+    private final String[] classes;
+    private final int[] firstSeats;
+    // index of the first seat of each car, and the number of seats at the end
+    private final int[] starts;
+    private final long expiresAt;
+
+    //
+    // CONSTRUCTORS
+    //
+    /**
+     * Creates a new layout.
+     *
+     * @param train the train number
+     * @param period the period colour, as stored in the database
+     * @param cars the car numbers, in increasing order
+     * @param classes the class of each car, as stored in the database
+     * @param firstSeats the number of the first seat of each car
+     * @param seatCounts the number of seats of each car
+     * @param timeToLiveMillis the time after which the layout is expired
+     */
+    SeatLayout(int train, String period, int[] cars, String[] classes, int[] firstSeats, int[] seatCounts,
+        long timeToLiveMillis) {
+        this.train = train;
+        this.period = period;
+        this.cars = cars.clone();
+        this.classes = classes.clone();
+        this.firstSeats = firstSeats.clone();
+        this.starts = new int[cars.length + 1];
+        for (int i = 0; i < cars.length; i++) {
+            starts[i + 1] = starts[i] + seatCounts[i];
+        }
+        this.expiresAt = System.currentTimeMillis() + timeToLiveMillis;
+    }
+
+    //
+    // METHODS
+    //
+    int getTrain() {
+        return train;
+    }
+
+    String getPeriod() {
+        return period;
+    }
+
+    /**
+     * Tells whether this layout is too old to be used.
+     *
+     * @return <code>true</code> if the layout must be read again
+     */
+    boolean isExpired() {
+        return System.currentTimeMillis() >= expiresAt;
+    }
+
+    /**
+     * Returns the number of seats of the train.
+     *
+     * @return the number of seats
+     */
+    int getSeatCount() {
+        return starts[cars.length];
+    }
+
+    /**
+     * Returns the number of cars of the train.
+     *
+     * @return the number of cars
+     */
+    int getCarCount() {
+        return cars.length;
+    }
+
+    /**
+     * Returns the number of the car at the specified index.
+     *
+     * @param index the index of the car, in car number order
+     *
+     * @return the car number
+     */
+    int getCar(int index) {
+        return cars[index];
+    }
+
+    /**
+     * Returns the class of the car at the specified index.
+     *
+     * @param index the index of the car
+     *
+     * @return the class, as stored in the database
+     */
+    String getCarClass(int index) {
+        return classes[index];
+    }
+
+    /**
+     * Returns the index of the first seat of the car at the specified index.
+     *
+     * @param index the index of the car
+     *
+     * @return the index of the seat
+     */
+    int getCarStart(int index) {
+        return starts[index];
+    }
+
+    /**
+     * Returns the index following the last seat of the car at the specified
+     * index.
+     *
+     * @param index the index of the car
+     *
+     * @return the index following the seats of the car
+     */
+    int getCarEnd(int index) {
+        return starts[index + 1];
+    }
+
+    /**
+     * Returns the index of the specified seat.
+     *
+     * @param car the car number
+     * @param seat the seat number
+     *
+     * @return the index, or -1 if the train has no such seat
+     */
+    int indexOf(int car, int seat) {
+        int i = Arrays.binarySearch(cars, car);
+        if (i < 0) {
+            return -1;
+        }
+        int offset = seat - firstSeats[i];
+        return (offset >= 0 && offset < starts[i + 1] - starts[i]) ? starts[i] + offset : -1;
+    }
+
+    /**
+     * Returns the index of the car of the seat at the specified index.
+     *
+     * @param index the index of the seat
+     *
+     * @return the index of the car
+     */
+    int carIndexOf(int index) {
+        // last car starting on or before the seat (cars without seats share their start)
+        int low = 0;
+        int high = cars.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the seat at the specified index, packed as in {@link SeatSet}.
+     *
+     * @param index the index of the seat
+     *
+     * @return the packed seat
+     */
+    int packedAt(int index) {
+        int car = carIndexOf(index);
+        return SeatSet.pack(cars[car], firstSeats[car] + index - starts[car]);
+    }
+
+    /**
+     * Returns the index of the specified packed seat.
+     *
+     * @param packed the packed seat
+     *
+     * @return the index, or -1 if the train has no such seat
+     */
+    int indexOf(int packed) {
+        return indexOf(SeatSet.carOf(packed), SeatSet.seatOf(packed));
+    }
+
+    /**
+     * Returns the seats of the specified class.
+     *
+     * @param travelClass the class, as stored in the database, or
+     * <code>null</code> for all the seats
+     *
+     * @return the seats, a new bitset
+     */
+    BitSet seatsOf(String travelClass) {
+        BitSet seats = new BitSet(getSeatCount());
+        for (int i = 0; i < cars.length; i++) {
+            if (travelClass == null || travelClass.equals(classes[i])) {
+                seats.set(starts[i], starts[i + 1]);
+            }
+        }
+        return seats;
+    }
+
+    /**
+     * Returns the specified seats as a set of packed seats.
+     *
+     * @param seats the seats
+     *
+     * @return the seats, in car and seat number order
+     */
+    SeatSet toSeatSet(BitSet seats) {
+        // indexes follow the car and seat numbers: the packed seats come out sorted
+        int[] packed = new int[seats.cardinality()];
+        int car = 0;
+        int size = 0;
+        for (int i = seats.nextSetBit(0); i >= 0; i = seats.nextSetBit(i + 1)) {
+            while (i >= starts[car + 1]) {
+                car++;
+            }
+            packed[size++] = SeatSet.pack(cars[car], firstSeats[car] + i - starts[car]);
+        }
+        return SeatSet.ofSorted(packed);
+    }
+
+}
@@ -0,0 +1,231 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable set of seats, each seat packed into a single int: the car
+ * number in the high 16 bits and the seat number in the low 16 bits.
+ * <p>
+ * The packed seats are kept in a sorted array, i.e. in car and seat number
+ * order, so that membership is a binary search and union and difference a
+ * merge of two arrays. {@link Seat} objects are only built by
+ * {@link #toSeats} for the public API.
+ */
+final class SeatSet {
+
+    //
+    // CONSTANTS
+    //
+    static final SeatSet EMPTY = new SeatSet(new int[0]);
+
+    //
+    // FIELDS
+    //
+    // packed seats, sorted, without duplicates
+    private final int[] seats;
+
+    //
+    // CONSTRUCTORS
+    //
+    private SeatSet(int[] seats) {
+        this.seats = seats;
+    }
+
+    /**
+     * Creates a set of the specified packed seats.
+     *
+     * @param seats the packed seats, in any order, possibly duplicated
+     *
+     * @return the set
+     */
+    static SeatSet of(int... seats) {
+        int[] sorted = seats.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || sorted[size - 1] != sorted[i]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return new SeatSet(Arrays.copyOf(sorted, size));
+    }
+
+    /**
+     * Creates a set of packed seats already sorted and without duplicates.
+     *
+     * @param seats the packed seats, owned by the set from now on
+     *
+     * @return the set
+     */
+    static SeatSet ofSorted(int[] seats) {
+        return new SeatSet(seats);
+    }
+
+    //
+    // METHODS
+    //
+    /**
+     * Packs a seat into an int.
+     *
+     * @param car the car number, from 0 to 65535
+     * @param seat the seat number, from 0 to 65535
+     *
+     * @return the packed seat
+     */
+    static int pack(int car, int seat) {
+        if ((car & ~0xFFFF) != 0 || (seat & ~0xFFFF) != 0) {
+            throw new IllegalArgumentException("seat out of range: " + car + "/" + seat);
+        }
+        return (car << 16) | seat;
+    }
+
+    /**
+     * Returns the car number of a packed seat.
+     *
+     * @param packed the packed seat
+     *
+     * @return the car number
+     */
+    static int carOf(int packed) {
+        return packed >>> 16;
+    }
+
+    /**
+     * Returns the seat number of a packed seat.
+     *
+     * @param packed the packed seat
+     *
+     * @return the seat number
+     */
+    static int seatOf(int packed) {
+        return packed & 0xFFFF;
+    }
+
+    int size() {
+        return seats.length;
+    }
+
+    boolean isEmpty() {
+        return seats.length == 0;
+    }
+
+    /**
+     * Returns the packed seat at the specified position, in car and seat
+     * number order.
+     *
+     * @param index the position
+     *
+     * @return the packed seat
+     */
+    int get(int index) {
+        return seats[index];
+    }
+
+    /**
+     * Tells whether the set contains the specified seat.
+     *
+     * @param packed the packed seat
+     *
+     * @return <code>true</code> if the seat belongs to the set
+     */
+    boolean contains(int packed) {
+        return Arrays.binarySearch(seats, packed) >= 0;
+    }
+
+    /**
+     * Returns the seats of this set or of the specified one.
+     *
+     * @param other the other set
+     *
+     * @return the union, possibly one of the two sets
+     */
+    SeatSet union(SeatSet other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+        int[] merged = new int[seats.length + other.seats.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < seats.length && j < other.seats.length) {
+            if (seats[i] < other.seats[j]) {
+                merged[size++] = seats[i++];
+            } else if (seats[i] > other.seats[j]) {
+                merged[size++] = other.seats[j++];
+            } else {
+                merged[size++] = seats[i++];
+                j++;
+            }
+        }
+        while (i < seats.length) {
+            merged[size++] = seats[i++];
+        }
+        while (j < other.seats.length) {
+            merged[size++] = other.seats[j++];
+        }
+        return new SeatSet(Arrays.copyOf(merged, size));
+    }
+
+    /**
+     * Returns the seats of this set that are not in the specified one.
+     *
+     * @param other the other set
+     *
+     * @return the difference, possibly this set
+     */
+    SeatSet difference(SeatSet other) {
+        if (isEmpty() || other.isEmpty()) {
+            return this;
+        }
+        int[] kept = new int[seats.length];
+        int j = 0;
+        int size = 0;
+        for (int i = 0; i < seats.length; i++) {
+            while (j < other.seats.length && other.seats[j] < seats[i]) {
+                j++;
+            }
+            if (j == other.seats.length || other.seats[j] != seats[i]) {
+                kept[size++] = seats[i];
+            }
+        }
+        return (size == seats.length) ? this : new SeatSet(Arrays.copyOf(kept, size));
+    }
+
+    /**
+     * Returns the seats of this set as objects, for the public API.
+     *
+     * @return the seats, a new list in car and seat number order
+     */
+    List<Seat> toSeats() {
+        List<Seat> list = new ArrayList<Seat>(seats.length);
+        for (int packed : seats) {
+            list.add(new Seat(carOf(packed), seatOf(packed)));
+        }
+        return list;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof SeatSet && Arrays.equals(seats, ((SeatSet) obj).seats);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(seats);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < seats.length; i++) {
+            text.append(i == 0 ? "" : ", ").append(carOf(seats[i])).append('/').append(seatOf(seats[i]));
+        }
+        return text.append(']').toString();
+    }
+
+}
@@ -0,0 +1,184 @@
+package model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of prepared statements bound to a single connection, keyed by their
+ * SQL text. When the cache is full, the least recently used statement is
+ * closed and evicted.
+ * <p>
+ * Statements handed out by the cache stay open: callers must close the result
+ * sets they obtain, but not the statements themselves. Like the connection it
+ * is bound to, a cache must be used by one thread at a time.
+ */
+class StatementCache {
+
+    //
+    // CONSTANTS
+    //
+    // default number of statements kept per connection
+    static final int DEFAULT_CAPACITY = 32;
+
+    //
+    // HELPER CLASSES
+    //
+    /**
+     * Use, hit, miss and eviction counters, shared by all the caches of a
+     * {@link DataAccess} so that they survive the connections. The uses count
+     * every statement handed out, the uncached ones included.
+     */
+    static class Counters {
+
+        private final AtomicLong uses = new AtomicLong();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        /**
+         * Adds the counters to the specified map.
+         *
+         * @param statistics the map to fill in
+         */
+        void collectStatistics(Map<String, Long> statistics) {
+            statistics.put("statements.used", uses.get());
+            statistics.put("statements.hits", hits.get());
+            statistics.put("statements.misses", misses.get());
+            statistics.put("statements.evictions", evictions.get());
+        }
+    }
+
+    //
+    // FIELDS
+    //
+    private final Connection connection;
+    private final Counters counters;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    // number of statements handed out, prepared or cached
+    private long useCount = 0;
+
+    //
+    // CONSTRUCTORS
+    //
+    /**
+     * Creates a new empty cache for the specified connection.
+     *
+     * @param connection the connection the statements are prepared on
+     * @param capacity the maximum number of statements kept open
+     * @param counters the counters to update
+     */
+    StatementCache(Connection connection, final int capacity, Counters counters) {
+        this.connection = connection;
+        this.counters = counters;
+        // access-ordered map: the eldest entry is the least recently used one
+        this.statements = new LinkedHashMap<String, PreparedStatement>(capacity * 2, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                evict(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    //
+    // METHODS
+    //
+    /**
+     * Returns the connection this cache is bound to.
+     *
+     * @return the connection
+     */
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns the number of statements handed out by this cache, cached or
+     * not, i.e. the number of statements run on its connection through the
+     * cache.
+     *
+     * @return the number of statements
+     */
+    long getUseCount() {
+        return useCount;
+    }
+
+    /**
+     * Returns a prepared statement for the specified SQL text, preparing it
+     * only if it is not already cached. The parameters of a cached statement
+     * are cleared before it is returned.
+     *
+     * @param sql the SQL text of the statement
+     *
+     * @return the statement, which must not be closed by the caller
+     *
+     * @throws SQLException if the statement cannot be prepared
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        useCount++;
+        counters.uses.incrementAndGet();
+        PreparedStatement statement = statements.get(sql);
+        if (statement != null && !statement.isClosed()) {
+            counters.hits.incrementAndGet();
+            statement.clearParameters();
+            return statement;
+        }
+        counters.misses.incrementAndGet();
+        statement = connection.prepareStatement(sql);
+        statements.put(sql, statement);
+        return statement;
+    }
+
+    /**
+     * Returns a new prepared statement for the specified SQL text, outside the
+     * cache, for statements run too seldom to be kept open (e.g. the loads of
+     * reference data). It is counted like the cached ones.
+     *
+     * @param sql the SQL text of the statement
+     *
+     * @return the statement, which must be closed by the caller
+     *
+     * @throws SQLException if the statement cannot be prepared
+     */
+    PreparedStatement prepareUncached(String sql) throws SQLException {
+        useCount++;
+        counters.uses.incrementAndGet();
+        return connection.prepareStatement(sql);
+    }
+
+    /**
+     * Closes all the cached statements.
+     */
+    void clear() {
+        Iterator<PreparedStatement> i = statements.values().iterator();
+        while (i.hasNext()) {
+            PreparedStatement statement = i.next();
+            i.remove();
+            close(statement);
+        }
+    }
+
+    private void evict(PreparedStatement statement) {
+        counters.evictions.incrementAndGet();
+        close(statement);
+    }
+
+    private static void close(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // nothing more can be done with this statement
+        }
+    }
+
+}
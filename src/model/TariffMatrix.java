@@ -0,0 +1,159 @@
+package model;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * An immutable in-memory copy of the tariffs, i.e. of the price per km of each
+ * class (<code>Classe</code>) and of the price variation of each period
+ * (<code>Periode</code>), so that tickets are priced without any query.
+ * <p>
+ * Both are stored in primitive arrays indexed by the ordinal of the
+ * corresponding enum; the classes and periods missing from the database are
+ * marked as not a number.
+ */
+class TariffMatrix {
+
+    //
+    // CONSTANTS
+    //
+    // default time after which the tariffs are read again from the database
+    static final long DEFAULT_TIME_TO_LIVE_MILLIS = 5 * 60 * 1000L;
+
+    //
+    // FIELDS
+    //
+    // price per km of each class, by Class ordinal
+    private final float[] pricesPerKm;
+    // price variation of each period, by Period ordinal
+    private final float[] variations;
+    private final long expiresAt;
+
+    //
+    // CONSTRUCTORS
+    //
+    private TariffMatrix(float[] pricesPerKm, float[] variations, long expiresAt) {
+        this.pricesPerKm = pricesPerKm;
+        this.variations = variations;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Reads the tariffs from the database.
+     *
+     * @param statements the statements of the connection to use
+     * @param timeToLiveMillis the time after which the tariffs are expired
+     *
+     * @return the tariffs
+     *
+     * @throws SQLException if the tariffs cannot be read
+     */
+    static TariffMatrix load(StatementCache statements, long timeToLiveMillis) throws SQLException {
+        float[] pricesPerKm = new float[Class.values().length];
+        Arrays.fill(pricesPerKm, Float.NaN);
+        try (PreparedStatement st = statements.prepareUncached(""
+                + "SELECT nomClasse, prixAuKm "
+                + "FROM Classe");
+             ResultSet result = st.executeQuery()) {
+            while (result.next()) {
+                for (Class travelClass : Class.values()) {
+                    if (nameOf(travelClass).equals(result.getString(1))) {
+                        pricesPerKm[travelClass.ordinal()] = result.getFloat(2);
+                    }
+                }
+            }
+        }
+
+        float[] variations = new float[Period.values().length];
+        Arrays.fill(variations, Float.NaN);
+        try (PreparedStatement st = statements.prepareUncached(""
+                + "SELECT couleurPeriode, variationTarif "
+                + "FROM Periode");
+             ResultSet result = st.executeQuery()) {
+            while (result.next()) {
+                for (Period period : Period.values()) {
+                    if (colourOf(period).equals(result.getString(1))) {
+                        variations[period.ordinal()] = result.getFloat(2);
+                    }
+                }
+            }
+        }
+        return new TariffMatrix(pricesPerKm, variations, System.currentTimeMillis() + timeToLiveMillis);
+    }
+
+    //
+    // METHODS
+    //
+    /**
+     * Returns the name of the specified class, as stored in the database.
+     *
+     * @param travelClass the class
+     *
+     * @return the name
+     */
+    static String nameOf(Class travelClass) {
+        switch (travelClass) {
+            case FIRST:
+                return "premiere";
+            case SECOND:
+                return "seconde";
+            default:
+                throw new IllegalArgumentException("unknown class: " + travelClass);
+        }
+    }
+
+    /**
+     * Returns the colour of the specified period, as stored in the database.
+     *
+     * @param period the period
+     *
+     * @return the colour
+     */
+    static String colourOf(Period period) {
+        switch (period) {
+            case BLUE:
+                return "bleue";
+            case WHITE:
+                return "blanche";
+            case RED:
+                return "rouge";
+            default:
+                throw new IllegalArgumentException("unknown period: " + period);
+        }
+    }
+
+    /**
+     * Tells whether this copy of the tariffs is too old to be used.
+     *
+     * @return <code>true</code> if the tariffs must be read again
+     */
+    boolean isExpired() {
+        return System.currentTimeMillis() >= expiresAt;
+    }
+
+    /**
+     * Returns the total price of a ticket, rounded to the cent. The price is
+     * computed in single precision, in the order it has always been computed.
+     *
+     * @param period the travel period
+     * @param travelClass the travel class
+     * @param distance the distance, in km
+     * @param passengerCount the number of passengers
+     *
+     * @return the price, or not a number if the class or the period has no
+     * tariff
+     */
+    float price(Period period, Class travelClass, float distance, int passengerCount) {
+        float pricePerKm = pricesPerKm[travelClass.ordinal()];
+        float variation = variations[period.ordinal()];
+        if (Float.isNaN(pricePerKm) || Float.isNaN(variation)) {
+            return Float.NaN;
+        }
+        float price = (float) passengerCount * distance * pricePerKm * variation;
+        // no half cent
+        return Math.round(price * 100.0f) / 100.0f;
+    }
+
+}
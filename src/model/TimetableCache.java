@@ -0,0 +1,181 @@
+package model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of train timetables, keyed by train number and period
+ * colour.
+ * <p>
+ * The cache is bounded by the approximate memory footprint of its entries:
+ * when it is exceeded, the least recently used timetables are evicted.
+ * Entries also expire after a while, so that changes made to the timetable
+ * tables by other applications are eventually seen; changes made through
+ * this application must be reported with {@link #invalidateTrain(int)} or
+ * {@link #invalidate()}. The cache is thread-safe.
+ */
+class TimetableCache {
+
+    //
+    // CONSTANTS
+    //
+    // default bound of the memory footprint of the cache: 4 MB
+    static final long DEFAULT_MAX_WEIGHT = 4L * 1024 * 1024;
+    // default time after which a timetable is read again from the database
+    static final long DEFAULT_TIME_TO_LIVE_MILLIS = 5 * 60 * 1000L;
+
+    //
+    // HELPER CLASSES
+    //
+    /**
+     * A cached timetable, with the time it expires.
+     */
+    private static class Entry {
+
+        private final TrainTimetable timetable;
+        private final long expiresAt;
+
+        Entry(TrainTimetable timetable, long expiresAt) {
+            this.timetable = timetable;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    //
+    // FIELDS
+    //
+    private final long maxWeight;
+    private final long timeToLiveMillis;
+    // access-ordered: the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+    private long weight = 0;
+
+    // statistics, guarded by this
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+    private long invalidationCount = 0;
+
+    //
+    // CONSTRUCTORS
+    //
+    /**
+     * Creates a new empty cache.
+     *
+     * @param maxWeight the bound of the memory footprint, in bytes
+     * @param timeToLiveMillis the time after which an entry expires
+     */
+    TimetableCache(long maxWeight, long timeToLiveMillis) {
+        this.maxWeight = maxWeight;
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    //
+    // METHODS
+    //
+    /**
+     * Returns the cached timetable of the specified train during the days of
+     * the specified colour.
+     *
+     * @param train the train number
+     * @param period the period colour, as stored in the database
+     *
+     * @return the timetable, possibly without any departure if the train does
+     * not run during that period, or <code>null</code> if it is not cached
+     */
+    synchronized TrainTimetable get(int train, String period) {
+        String key = key(train, period);
+        Entry entry = entries.get(key);
+        if (entry != null && System.currentTimeMillis() >= entry.expiresAt) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            missCount += 1;
+            return null;
+        }
+        hitCount += 1;
+        return entry.timetable;
+    }
+
+    /**
+     * Adds the specified timetable to the cache, replacing the one of the same
+     * train and colour, and evicts the least recently used timetables if the
+     * cache is full.
+     *
+     * @param timetable the timetable
+     */
+    synchronized void put(TrainTimetable timetable) {
+        String key = key(timetable.getTrain(), timetable.getPeriod());
+        remove(key);
+        entries.put(key, new Entry(timetable, System.currentTimeMillis() + timeToLiveMillis));
+        weight += timetable.weight();
+        Iterator<Entry> i = entries.values().iterator();
+        while (weight > maxWeight && i.hasNext()) {
+            Entry eldest = i.next();
+            if (eldest.timetable == timetable) {
+                break;                              // never evict the newcomer
+            }
+            i.remove();
+            weight -= eldest.timetable.weight();
+            evictionCount += 1;
+        }
+    }
+
+    /**
+     * Discards the timetables of the specified train, e.g. after its segments
+     * or its departures have changed.
+     *
+     * @param train the train number
+     */
+    synchronized void invalidateTrain(int train) {
+        String prefix = train + "/";
+        Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<String, Entry> entry = i.next();
+            if (entry.getKey().startsWith(prefix)) {
+                i.remove();
+                weight -= entry.getValue().timetable.weight();
+            }
+        }
+        invalidationCount += 1;
+    }
+
+    /**
+     * Discards all the timetables, e.g. after a segment length has changed.
+     */
+    synchronized void invalidate() {
+        entries.clear();
+        weight = 0;
+        invalidationCount += 1;
+    }
+
+    /**
+     * Adds the cache statistics to the specified map.
+     *
+     * @param statistics the map to fill in
+     */
+    synchronized void collectStatistics(Map<String, Long> statistics) {
+        long lookups = hitCount + missCount;
+        statistics.put("timetables.hits", hitCount);
+        statistics.put("timetables.misses", missCount);
+        statistics.put("timetables.hit.rate.pct", lookups == 0 ? 0L : hitCount * 100 / lookups);
+        statistics.put("timetables.evictions", evictionCount);
+        statistics.put("timetables.invalidations", invalidationCount);
+        statistics.put("timetables.size", (long) entries.size());
+        statistics.put("timetables.weight.bytes", weight);
+    }
+
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            weight -= old.timetable.weight();
+        }
+    }
+
+    private static String key(int train, String period) {
+        return train + "/" + period;
+    }
+
+}
@@ -0,0 +1,264 @@
+package model;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Expands the timetables of the trains serving a journey into the daily
+ * journeys of a date range, entirely in memory.
+ * <p>
+ * A search is built once per request from the timetables and the period
+ * calendar, and then asked for the journeys of any range of days within the
+ * request. Instances are immutable and may be shared by several threads.
+ */
+class TimetableSearch {
+
+    //
+    // CONSTANTS
+    //
+    // default number of days of the partitions computed in parallel
+    static final int DEFAULT_PARTITION_DAYS = 30;
+    private static final Comparator<Journey> BY_DEPARTURE = new Comparator<Journey>() {
+        @Override
+        public int compare(Journey j1, Journey j2) {
+            int c = j1.getDepartureDate().compareTo(j2.getDepartureDate());
+            return c != 0 ? c : Integer.compare(j1.getTrainNumber(), j2.getTrainNumber());
+        }
+    };
+
+    //
+    // HELPER CLASSES
+    //
+    /**
+     * Computes the journeys of a range of days, split into halves until the
+     * ranges are short enough.
+     */
+    private final class Partition extends RecursiveTask<List<Journey>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long from;
+        private final long to;
+        private final int partitionDays;
+
+        Partition(long from, long to, int partitionDays) {
+            this.from = from;
+            this.to = to;
+            this.partitionDays = partitionDays;
+        }
+
+        @Override
+        protected List<Journey> compute() {
+            if (to - from < partitionDays) {
+                return journeys(from, to);
+            }
+            long middle = from + (to - from) / 2;
+            Partition first = new Partition(from, middle, partitionDays);
+            Partition second = new Partition(middle + 1, to, partitionDays);
+            first.fork();
+            List<Journey> journeys = second.compute();
+            // the earlier days first
+            List<Journey> merged = first.join();
+            merged.addAll(journeys);
+            return merged;
+        }
+    }
+
+    //
+    // FIELDS
+    //
+    private final String departureStation;
+    private final String arrivalStation;
+    private final long fromMillis;
+    private final long toMillis;
+    private final long firstDay;
+    private final long lastDay;
+    // colour of each day, looked up as the days are computed
+    private final PeriodCalendar calendar;
+    // timetables of the trains serving the journey, by period colour
+    private final Map<String, List<TrainTimetable>> timetables = new HashMap<String, List<TrainTimetable>>();
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    //
+    // CONSTRUCTORS
+    //
+    /**
+     * Creates a new search for the journeys from a station to another
+     * leaving after <code>fromDate</code> and arriving before
+     * <code>toDate</code>.
+     *
+     * @param departureStation the departure station
+     * @param arrivalStation the arrival station
+     * @param fromDate the earliest departure date (excluded)
+     * @param toDate the latest arrival date (excluded)
+     * @param candidates the timetables of the trains that may serve the
+     * journey; the ones that do not serve both stations in that order are
+     * ignored
+     * @param calendar the period calendar
+     */
+    TimetableSearch(String departureStation, String arrivalStation, Date fromDate, Date toDate,
+        Collection<TrainTimetable> candidates, PeriodCalendar calendar) {
+        this.departureStation = departureStation;
+        this.arrivalStation = arrivalStation;
+        this.fromMillis = fromDate.getTime();
+        this.toMillis = toDate.getTime();
+        this.firstDay = PeriodCalendar.toEpochDay(fromDate);
+        this.lastDay = PeriodCalendar.toEpochDay(toDate);
+        this.calendar = calendar;
+        for (TrainTimetable timetable : candidates) {
+            int from = timetable.indexOf(departureStation);
+            int to = timetable.indexOf(arrivalStation);
+            if (from < 0 || to <= from) {
+                continue;
+            }
+            List<TrainTimetable> list = timetables.get(timetable.getPeriod());
+            if (list == null) {
+                list = new ArrayList<TrainTimetable>();
+                timetables.put(timetable.getPeriod(), list);
+            }
+            list.add(timetable);
+        }
+    }
+
+    //
+    // METHODS
+    //
+    /**
+     * Returns the first day of the request.
+     *
+     * @return the day, in days since the epoch
+     */
+    long getFirstDay() {
+        return firstDay;
+    }
+
+    /**
+     * Returns the last day of the request.
+     *
+     * @return the day, in days since the epoch
+     */
+    long getLastDay() {
+        return lastDay;
+    }
+
+    /**
+     * Returns the journeys of the request leaving during the specified range
+     * of days, in chronological order of departure.
+     *
+     * @param from the first day of the range
+     * @param to the last day of the range (included)
+     *
+     * @return the journeys, a new list
+     */
+    List<Journey> journeys(long from, long to) {
+        List<Journey> journeys = new ArrayList<Journey>();
+        for (long day = Math.max(from, firstDay); day <= Math.min(to, lastDay); day++) {
+            addJourneys(day, journeys);
+        }
+        return journeys;
+    }
+
+    /**
+     * Returns the journeys of the request leaving during the specified range
+     * of days, in chronological order of departure, computed in parallel: the
+     * range is split into partitions of at most <code>partitionDays</code>
+     * days, whose journeys are computed by the specified pool and then
+     * concatenated in chronological order.
+     *
+     * @param from the first day of the range
+     * @param to the last day of the range (included)
+     * @param pool the pool to compute the partitions with
+     * @param partitionDays the maximum number of days of a partition
+     *
+     * @return the journeys, a new list, the same as {@link #journeys(long, long)}
+     */
+    List<Journey> journeys(long from, long to, ForkJoinPool pool, int partitionDays) {
+        long first = Math.max(from, firstDay);
+        long last = Math.min(to, lastDay);
+        if (last - first < partitionDays) {
+            return journeys(first, last);
+        }
+        return pool.invoke(new Partition(first, last, partitionDays));
+    }
+
+    /**
+     * Returns the journeys of the request as a lazy stream, in the order of
+     * {@link #journeys}: the journeys of a day are only computed once the ones
+     * of the previous day have been consumed, so that only one day is held in
+     * memory and the first journeys come at once whatever the range.
+     *
+     * @return the journeys, a sequential stream
+     */
+    Stream<Journey> stream() {
+        Spliterator<Journey> days = new Spliterators.AbstractSpliterator<Journey>(Long.MAX_VALUE,
+            Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE) {
+
+            private final List<Journey> buffer = new ArrayList<Journey>();
+            private int next = 0;
+            private long day = firstDay;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Journey> action) {
+                while (next == buffer.size()) {
+                    if (day > lastDay) {
+                        return false;
+                    }
+                    buffer.clear();
+                    next = 0;
+                    addJourneys(day++, buffer);
+                }
+                action.accept(buffer.get(next++));
+                return true;
+            }
+        };
+        return StreamSupport.stream(days, false);
+    }
+
+    /**
+     * Adds the journeys of the request leaving on the specified day to the
+     * specified list, in chronological order of departure.
+     *
+     * @param day the day, in days since the epoch
+     * @param journeys the list to add the journeys to
+     */
+    void addJourneys(long day, List<Journey> journeys) {
+        String period = calendar.periodOf(day);
+        List<TrainTimetable> running = (period == null) ? null : timetables.get(period);
+        if (running == null) {
+            return;
+        }
+        int start = journeys.size();
+        for (TrainTimetable timetable : running) {
+            int from = timetable.getOffset(timetable.indexOf(departureStation));
+            int to = timetable.getOffset(timetable.indexOf(arrivalStation));
+            for (int i = 0; i < timetable.getDepartureCount(); i++) {
+                long departure = TrainTimetable.departureMillis(day, timetable.getDeparture(i), zone);
+                long leaving = departure + from * 1000L;
+                long arriving = departure + to * 1000L;
+                // keep the journeys leaving after fromDate and arriving before toDate
+                if (leaving > fromMillis && arriving < toMillis) {
+                    journeys.add(new Journey(departureStation, arrivalStation, timetable.getTrain(),
+                        new Date(leaving), new Date(arriving)));
+                }
+            }
+        }
+        if (journeys.size() - start > 1) {
+            Collections.sort(journeys.subList(start, journeys.size()), BY_DEPARTURE);
+        }
+    }
+
+}
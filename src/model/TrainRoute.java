@@ -0,0 +1,196 @@
+package model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The route of a train: the stations it serves, in <code>rang</code> order,
+ * the rank, speed and length of each of its segments, and the period colours
+ * during which it runs.
+ * <p>
+ * Lengths are stored as cumulative distances from the first station, so that
+ * the distance between any two stations is a single subtraction. Instances
+ * are immutable.
+ */
+class TrainRoute {
+
+    //
+    // FIELDS
+    //
+    private final int train;
+    // served stations, in rang order: one more than the number of segments
+    private final String[] stations;
+    // rank and speed of the segment leaving the station at the same index
+    private final int[] ranks;
+    private final double[] speeds;
+    // distance from the first station, in km
+    private final int[] distances;
+    private final Set<String> periods;
+    // index of each station in the arrays above
+    private final Map<String, Integer> indexes;
+
+    //
+    // CONSTRUCTORS
+    //
+    /**
+     * Creates a new route.
+     *
+     * @param train the train number
+     * @param stations the served stations, in rang order
+     * @param ranks the rank of each segment, in the same order
+     * @param speeds the speed of the train on each segment, in km/h
+     * @param lengths the length of each segment, in km
+     * @param periods the colours of the periods during which the train has
+     * departures
+     */
+    TrainRoute(int train, String[] stations, int[] ranks, double[] speeds, int[] lengths,
+        Collection<String> periods) {
+        if (stations.length != ranks.length + 1 || speeds.length != ranks.length || lengths.length != ranks.length) {
+            throw new IllegalArgumentException("one rank, speed and length per segment expected");
+        }
+        this.train = train;
+        this.stations = stations.clone();
+        this.ranks = ranks.clone();
+        this.speeds = speeds.clone();
+        this.distances = new int[stations.length];
+        for (int i = 0; i < lengths.length; i++) {
+            distances[i + 1] = distances[i] + lengths[i];
+        }
+        this.periods = Collections.unmodifiableSet(new HashSet<String>(periods));
+        this.indexes = new HashMap<String, Integer>();
+        for (int i = 0; i < stations.length; i++) {
+            indexes.put(stations[i], i);
+        }
+    }
+
+    //
+    // METHODS
+    //
+    int getTrain() {
+        return train;
+    }
+
+    /**
+     * Returns the number of stations served by the train.
+     *
+     * @return the number of stations
+     */
+    int getStationCount() {
+        return stations.length;
+    }
+
+    /**
+     * Returns the station at the specified index, in rang order.
+     *
+     * @param index the index of the station
+     *
+     * @return the station
+     */
+    String getStation(int index) {
+        return stations[index];
+    }
+
+    /**
+     * Returns the index of the specified station.
+     *
+     * @param station the station
+     *
+     * @return the index, or -1 if the train does not serve the station
+     */
+    int indexOf(String station) {
+        Integer index = indexes.get(station);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the rank of the segment leaving the station at the specified
+     * index.
+     *
+     * @param index the index of the station, the last one excluded
+     *
+     * @return the rank of the segment
+     */
+    int getRank(int index) {
+        return ranks[index];
+    }
+
+    /**
+     * Returns the speed of the train on the segment leaving the station at the
+     * specified index.
+     *
+     * @param index the index of the station, the last one excluded
+     *
+     * @return the speed, in km/h
+     */
+    double getSpeed(int index) {
+        return speeds[index];
+    }
+
+    /**
+     * Returns the length of the segment leaving the station at the specified
+     * index.
+     *
+     * @param index the index of the station, the last one excluded
+     *
+     * @return the length, in km
+     */
+    int getLength(int index) {
+        return distances[index + 1] - distances[index];
+    }
+
+    /**
+     * Returns the distance between the stations at the specified indexes.
+     *
+     * @param from the index of the first station
+     * @param to the index of the second station, after the first one
+     *
+     * @return the distance, in km
+     */
+    int getDistance(int from, int to) {
+        return distances[to] - distances[from];
+    }
+
+    /**
+     * Returns the distance between the specified stations.
+     *
+     * @param departureStation the departure station
+     * @param arrivalStation the arrival station
+     *
+     * @return the distance, in km, or -1 if the train does not serve the
+     * stations in that order
+     */
+    int distance(String departureStation, String arrivalStation) {
+        int from = indexOf(departureStation);
+        int to = indexOf(arrivalStation);
+        return (from >= 0 && to > from) ? distances[to] - distances[from] : -1;
+    }
+
+    /**
+     * Tells whether the train serves the specified stations in that order.
+     *
+     * @param departureStation the departure station
+     * @param arrivalStation the arrival station
+     *
+     * @return <code>true</code> if the train goes from the first station to
+     * the second one
+     */
+    boolean serves(String departureStation, String arrivalStation) {
+        int from = indexOf(departureStation);
+        return from >= 0 && indexOf(arrivalStation) > from;
+    }
+
+    /**
+     * Returns the colours of the periods during which the train has
+     * departures.
+     *
+     * @return the colours, an unmodifiable set
+     */
+    Set<String> getPeriods() {
+        return periods;
+    }
+
+}
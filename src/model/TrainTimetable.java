@@ -0,0 +1,207 @@
+package model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The timetable of a train during the days of a given period colour: the
+ * stations it serves, in <code>rang</code> order, the time it takes to reach
+ * each of them from the first one, and its departure times from the first
+ * one.
+ * <p>
+ * The timetable does not depend on the date: the planning of a given day is
+ * obtained by adding the offsets to the departure time of that day.
+ * Instances are immutable.
+ */
+class TrainTimetable {
+
+    //
+    // FIELDS
+    //
+    private final int train;
+    private final String period;
+    // served stations, in rang order: one more than the number of segments
+    private final String[] stations;
+    // time to reach each station from the first one, in seconds
+    private final int[] offsets;
+    // departure times from the first station, in seconds of the day, sorted
+    private final int[] departures;
+    // index of each station in the arrays above
+    private final Map<String, Integer> indexes;
+
+    //
+    // CONSTRUCTORS
+    //
+    /**
+     * Creates a new timetable.
+     *
+     * @param train the train number
+     * @param period the period colour, as stored in the database
+     * @param stations the served stations, in rang order
+     * @param offsets the time to reach each station, in seconds
+     * @param departures the departure times, in seconds of the day
+     */
+    TrainTimetable(int train, String period, String[] stations, int[] offsets, int[] departures) {
+        if (stations.length != offsets.length) {
+            throw new IllegalArgumentException("one offset per station expected");
+        }
+        this.train = train;
+        this.period = period;
+        this.stations = stations.clone();
+        this.offsets = offsets.clone();
+        this.departures = departures.clone();
+        Arrays.sort(this.departures);
+        this.indexes = new HashMap<String, Integer>();
+        for (int i = 0; i < stations.length; i++) {
+            indexes.put(stations[i], i);
+        }
+    }
+
+    //
+    // METHODS
+    //
+    /**
+     * Creates the timetable of a train from its route: the time to reach each
+     * station is computed from the length and speed of each segment.
+     *
+     * @param route the route of the train
+     * @param period the period colour, as stored in the database
+     * @param departures the departure times, in seconds of the day
+     *
+     * @return the timetable
+     */
+    static TrainTimetable forRoute(TrainRoute route, String period, int[] departures) {
+        String[] stations = new String[route.getStationCount()];
+        int[] offsets = new int[stations.length];
+        stations[0] = route.getStation(0);
+        for (int i = 1; i < stations.length; i++) {
+            stations[i] = route.getStation(i);
+            offsets[i] = offsets[i - 1] + segmentSeconds(route.getLength(i - 1), route.getSpeed(i - 1));
+        }
+        return new TrainTimetable(route.getTrain(), period, stations, offsets, departures);
+    }
+
+    /**
+     * Returns the offset, in seconds, of the time it takes to cover a segment
+     * of the specified length at the specified speed. The hours and minutes
+     * are truncated and the seconds rounded, segment by segment, as the
+     * planning has always been computed.
+     *
+     * @param distance the length of the segment, in km
+     * @param speed the speed of the train, in km/h
+     *
+     * @return the travel time, in seconds
+     */
+    static int segmentSeconds(double distance, double speed) {
+        double rawHours = distance / speed;
+        int hours = (int) rawHours;
+        int minutes = (int) ((rawHours - (double) hours) * 60);
+        int seconds = (int) Math.round((((rawHours - (double) hours) * 60) - (double) minutes) * 60);
+        return hours * 3600 + minutes * 60 + seconds;
+    }
+
+    /**
+     * Returns the instant a train leaves at the specified time of the
+     * specified day, in the specified time zone.
+     *
+     * @param day the day, in days since the epoch
+     * @param secondOfDay the time of the day, in seconds
+     * @param zone the time zone the timetable is expressed in
+     *
+     * @return the instant, in milliseconds since the epoch
+     */
+    static long departureMillis(long day, int secondOfDay, ZoneId zone) {
+        return LocalDateTime.of(LocalDate.ofEpochDay(day), LocalTime.ofSecondOfDay(secondOfDay))
+            .atZone(zone).toInstant().toEpochMilli();
+    }
+
+    int getTrain() {
+        return train;
+    }
+
+    String getPeriod() {
+        return period;
+    }
+
+    /**
+     * Returns the number of stations served by the train.
+     *
+     * @return the number of stations
+     */
+    int getStationCount() {
+        return stations.length;
+    }
+
+    /**
+     * Returns the station at the specified index, in rang order.
+     *
+     * @param index the index of the station
+     *
+     * @return the station
+     */
+    String getStation(int index) {
+        return stations[index];
+    }
+
+    /**
+     * Returns the index of the specified station.
+     *
+     * @param station the station
+     *
+     * @return the index, or -1 if the train does not serve the station
+     */
+    int indexOf(String station) {
+        Integer index = indexes.get(station);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the time it takes to reach the station at the specified index
+     * from the first station.
+     *
+     * @param index the index of the station
+     *
+     * @return the offset, in seconds
+     */
+    int getOffset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * Returns the number of departures during a day.
+     *
+     * @return the number of departures
+     */
+    int getDepartureCount() {
+        return departures.length;
+    }
+
+    /**
+     * Returns the departure time at the specified index, the departures being
+     * sorted by time.
+     *
+     * @param index the index of the departure
+     *
+     * @return the time of the day, in seconds
+     */
+    int getDeparture(int index) {
+        return departures[index];
+    }
+
+    /**
+     * Returns the approximate memory footprint of this timetable, the station
+     * names being shared with the other timetables of the train.
+     *
+     * @return the footprint, in bytes
+     */
+    long weight() {
+        // object headers and arrays, plus a reference, an offset and a map entry per station
+        return 128 + stations.length * 48L + departures.length * 4L;
+    }
+
+}
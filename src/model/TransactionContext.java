@@ -0,0 +1,112 @@
+package model;
+
+import java.sql.Connection;
+
+/**
+ * The facts resolved once by a transaction made of several steps, e.g. a
+ * booking, so that the steps share them instead of resolving them again:
+ * the period of the day, the route of the train, the indexes of the
+ * stations of the journey in that route and its distance along the train.
+ * <p>
+ * The context also counts the statements the transaction runs: all of them
+ * go through the statement cache of its connection, the uncached ones
+ * included (booking ID blocks, loads of reference data). A context is used
+ * by a single transaction, hence by a single thread.
+ */
+class TransactionContext {
+
+    //
+    // FIELDS
+    //
+    private final Connection connection;
+    private final StatementCache statements;
+    private final long firstStatement;
+
+    // resolved facts
+    private String period = null;
+    private Period travelPeriod = null;
+    private TrainRoute route = null;
+    private int from = -1;
+    private int to = -1;
+    private int distance = -1;
+
+    //
+    // CONSTRUCTORS
+    //
+    /**
+     * Creates a new context, before the transaction runs its first statement.
+     *
+     * @param statements the statement cache of the connection of the
+     * transaction
+     */
+    TransactionContext(StatementCache statements) {
+        this.connection = statements.getConnection();
+        this.statements = statements;
+        this.firstStatement = statements.getUseCount();
+    }
+
+    //
+    // METHODS
+    //
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns the number of statements run through the statement cache since
+     * the context was created.
+     *
+     * @return the number of statements
+     */
+    long getStatementCount() {
+        return statements.getUseCount() - firstStatement;
+    }
+
+    /**
+     * Records the journey of the transaction.
+     *
+     * @param period the period colour of the day, as stored in the database
+     * @param travelPeriod the corresponding period
+     * @param route the route of the train
+     * @param from the index of the departure station in the route
+     * @param to the index of the arrival station in the route
+     */
+    void setJourney(String period, Period travelPeriod, TrainRoute route, int from, int to) {
+        this.period = period;
+        this.travelPeriod = travelPeriod;
+        this.route = route;
+        this.from = from;
+        this.to = to;
+        this.distance = route.getDistance(from, to);
+    }
+
+    String getPeriod() {
+        return period;
+    }
+
+    Period getTravelPeriod() {
+        return travelPeriod;
+    }
+
+    TrainRoute getRoute() {
+        return route;
+    }
+
+    int getFrom() {
+        return from;
+    }
+
+    int getTo() {
+        return to;
+    }
+
+    /**
+     * Returns the distance of the journey along the route of the train.
+     *
+     * @return the distance, in km
+     */
+    int getDistance() {
+        return distance;
+    }
+
+}
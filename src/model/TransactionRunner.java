@@ -0,0 +1,224 @@
+package model;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs units of work that form a whole transaction, running them again when
+ * the database aborts them because of a concurrency conflict, i.e. a deadlock
+ * or a lock wait timeout.
+ * <p>
+ * Between two attempts, the transaction is rolled back and the runner sleeps
+ * for a random time below an exponentially growing bound ("full jitter"), so
+ * that the transactions that collided do not collide again. The number of
+ * attempts per unit of work is bounded, and so is the overall proportion of
+ * retries: each unit of work earns a fraction of a retry token and each retry
+ * spends a whole one, which prevents retry storms when the database is
+ * saturated.
+ * <p>
+ * Any other error is reported to the caller as is, the transaction still
+ * open, so that the caller rolls it back and reports it as usual.
+ */
+class TransactionRunner {
+
+    //
+    // CONSTANTS
+    //
+    static final int DEFAULT_MAX_ATTEMPTS = 5;
+    static final long DEFAULT_BASE_BACKOFF_MILLIS = 10;
+    static final long DEFAULT_MAX_BACKOFF_MILLIS = 1000;
+    // retry tokens earned per unit of work, and maximum number of tokens kept
+    private static final double TOKENS_PER_RUN = 0.2;
+    private static final double MAX_TOKENS = 50.0;
+
+    // SQL state of serialization failures, deadlocks included
+    private static final String SERIALIZATION_FAILURE = "40001";
+    // MySQL error codes: ER_LOCK_DEADLOCK and ER_LOCK_WAIT_TIMEOUT
+    private static final int LOCK_DEADLOCK = 1213;
+    private static final int LOCK_WAIT_TIMEOUT = 1205;
+
+    //
+    // HELPER CLASSES
+    //
+    /**
+     * A unit of work: starts a transaction on the specified connection, runs
+     * its statements and commits. It may run several times, and must therefore
+     * not have any effect outside the transaction that is not safe to repeat.
+     *
+     * @param <T> the type of the result
+     */
+    interface Work<T> {
+
+        T run(Connection connection) throws SQLException;
+    }
+
+    //
+    // FIELDS
+    //
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Random random = new Random();
+
+    // retry budget, and statistics, guarded by this
+    private double tokens = MAX_TOKENS;
+    private long runCount = 0;
+    private long retryCount = 0;
+    private long recoveredCount = 0;
+    private long exhaustedCount = 0;
+    private long throttledCount = 0;
+    private long failedCount = 0;
+    private long backoffMillis = 0;
+
+    //
+    // CONSTRUCTORS
+    //
+    /**
+     * Creates a new runner.
+     *
+     * @param maxAttempts the maximum number of times a unit of work runs
+     * @param baseBackoffMillis the bound of the first backoff
+     * @param maxBackoffMillis the maximum bound of the backoff
+     */
+    TransactionRunner(int maxAttempts, long baseBackoffMillis, long maxBackoffMillis) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("attempts must be positive: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    //
+    // METHODS
+    //
+    /**
+     * Runs the specified unit of work on the specified connection, as many
+     * times as needed and allowed.
+     *
+     * @param <T> the type of the result
+     * @param connection the connection to run the work on
+     * @param work the unit of work
+     *
+     * @return the result of the successful attempt
+     *
+     * @throws SQLException the error of the last attempt, if no attempt
+     * succeeded
+     */
+    <T> T run(Connection connection, Work<T> work) throws SQLException {
+        synchronized (this) {
+            runCount += 1;
+            tokens = Math.min(MAX_TOKENS, tokens + TOKENS_PER_RUN);
+        }
+        int attempt = 1;
+        while (true) {
+            try {
+                T result = work.run(connection);
+                if (attempt > 1) {
+                    synchronized (this) {
+                        recoveredCount += 1;
+                    }
+                }
+                return result;
+            } catch (SQLException e) {
+                if (!isRetryable(e)) {
+                    synchronized (this) {
+                        failedCount += 1;
+                    }
+                    throw e;
+                }
+                if (!mayRetry(attempt)) {
+                    throw e;
+                }
+                // the attempt is over: release its locks before waiting
+                connection.rollback();
+                if (!backoff(attempt)) {
+                    throw e;
+                }
+                attempt += 1;
+            }
+        }
+    }
+
+    /**
+     * Adds the runner statistics to the specified map.
+     *
+     * @param statistics the map to fill in
+     */
+    synchronized void collectStatistics(Map<String, Long> statistics) {
+        statistics.put("transactions.runs", runCount);
+        statistics.put("transactions.retries", retryCount);
+        statistics.put("transactions.recovered", recoveredCount);
+        statistics.put("transactions.exhausted", exhaustedCount);
+        statistics.put("transactions.throttled", throttledCount);
+        statistics.put("transactions.failed", failedCount);
+        statistics.put("transactions.backoff.total.ms", backoffMillis);
+    }
+
+    /**
+     * Tells whether the specified error aborted the transaction because of a
+     * concurrency conflict, so that running it again may succeed.
+     *
+     * @param e the error
+     *
+     * @return <code>true</code> if the transaction may be retried
+     */
+    static boolean isRetryable(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (!(t instanceof SQLException)) {
+                continue;
+            }
+            SQLException s = (SQLException) t;
+            if (s instanceof SQLTransactionRollbackException
+                || SERIALIZATION_FAILURE.equals(s.getSQLState())
+                || s.getErrorCode() == LOCK_DEADLOCK
+                || s.getErrorCode() == LOCK_WAIT_TIMEOUT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decides whether a failed attempt may be retried, and spends a retry
+     * token if so.
+     */
+    private synchronized boolean mayRetry(int attempt) {
+        if (attempt >= maxAttempts) {
+            exhaustedCount += 1;
+            return false;
+        }
+        if (tokens < 1.0) {
+            throttledCount += 1;
+            return false;
+        }
+        tokens -= 1.0;
+        retryCount += 1;
+        return true;
+    }
+
+    /**
+     * Sleeps before the next attempt.
+     *
+     * @return <code>false</code> if the thread was interrupted
+     */
+    private boolean backoff(int attempt) {
+        long bound = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        long millis;
+        synchronized (this) {
+            millis = (long) (random.nextDouble() * (bound + 1));
+            backoffMillis += millis;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+}
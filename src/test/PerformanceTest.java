@@ -0,0 +1,273 @@
+package test;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import model.*;
+
+/**
+ * A simple benchmark program for {@link DataAccess}. Each benchmark prints
+ * the average time of an operation and the number of SQL statements it
+ * executed, taken from {@link DataAccess#getStatistics()}.
+ *
+ */
+public class PerformanceTest {
+
+    //
+    // CONSTANTS
+    //
+    private static final int WARMUP_RUNS = 20;
+    private static final int MEASURED_RUNS = 100;
+    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+    //
+    // HELPER CLASSES
+    //
+    /**
+     * An operation to benchmark.
+     */
+    interface Operation {
+
+        void run() throws Exception;
+    }
+
+    //
+    // HELPER METHODS
+    //
+    /**
+     * Returns the number of statements executed so far by the specified data
+     * access object, cached or not.
+     *
+     * @param data the data access object
+     *
+     * @return the number of statements
+     */
+    private static long statementCount(DataAccess data) {
+        Long used = data.getStatistics().get("statements.used");
+        return used == null ? 0 : used;
+    }
+
+    /**
+     * Runs the specified operation several times and prints its average
+     * execution time and number of statements.
+     *
+     * @param name the name of the benchmark
+     * @param data the data access object the operation uses
+     * @param operation the operation
+     *
+     * @throws Exception if anything goes wrong
+     */
+    private static void benchmark(String name, DataAccess data, Operation operation)
+        throws Exception {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            operation.run();
+        }
+        long statements = statementCount(data);
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        statements = statementCount(data) - statements;
+        System.out.println(String.format("%-40s %10.1f us/op %6.1f statements/op", name,
+            elapsed / 1000.0 / MEASURED_RUNS, (double) statements / MEASURED_RUNS));
+    }
+
+    /**
+     * Returns the date <code>days</code> days after the specified one.
+     */
+    private static Date plusDays(Date date, int days) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(date);
+        cal.add(Calendar.DATE, days);
+        return cal.getTime();
+    }
+
+    /**
+     * Benchmarks the timetable search for windows of 1, 7, 30 and 365 days:
+     * the number of statements must not depend on the window, and the first
+     * ten journeys of a stream must come as fast whatever the window.
+     *
+     * @param data the data access object to use
+     *
+     * @throws Exception if anything goes wrong
+     */
+    private static void searchBenchmarks(final DataAccess data) throws Exception {
+        final Date from = dateFormat.parse("2017-10-01 00:00:00");
+        for (final int days : new int[] {1, 7, 30, 365}) {
+            benchmark("getTrainTimes(" + days + " days)", data, new Operation() {
+                @Override
+                public void run() throws Exception {
+                    data.getTrainTimes("Lyon", "Avignon", from, plusDays(from, days));
+                }
+            });
+            benchmark("streamTrainTimes(" + days + " days).limit(10)", data, new Operation() {
+                @Override
+                public void run() throws Exception {
+                    data.streamTrainTimes("Lyon", "Avignon", from, plusDays(from, days)).limit(10).count();
+                }
+            });
+        }
+    }
+
+    /**
+     * Benchmarks the parallel computation of the journeys of a ten-year window
+     * on 1 to 16 threads, with partitions of 30 days.
+     *
+     * @param data the data access object to use
+     *
+     * @throws Exception if anything goes wrong
+     */
+    private static void scalingBenchmarks(final DataAccess data) throws Exception {
+        final Date from = dateFormat.parse("2017-10-01 00:00:00");
+        for (int threads : new int[] {1, 2, 4, 8, 16}) {
+            data.setSearchParallelism(threads, 30);
+            benchmark("getTrainTimes(3650 days, " + threads + " threads)", data, new Operation() {
+                @Override
+                public void run() throws Exception {
+                    data.getTrainTimes("Lyon", "Avignon", from, plusDays(from, 3650));
+                }
+            });
+        }
+        data.setSearchParallelism(1, 30);
+    }
+
+    /**
+     * Benchmarks the itinerary planner on a journey that needs a change of
+     * train, for windows of 7 and 30 days.
+     *
+     * @param data the data access object to use
+     *
+     * @throws Exception if anything goes wrong
+     */
+    private static void itineraryBenchmarks(final DataAccess data) throws Exception {
+        final Date from = dateFormat.parse("2017-10-01 00:00:00");
+        System.out.println("Strasbourg -> Marseille: " + data.getEarliestItinerary("Strasbourg", "Marseille", from, plusDays(from, 30)));
+        for (final int days : new int[] {7, 30}) {
+            benchmark("getEarliestItinerary(" + days + " days)", data, new Operation() {
+                @Override
+                public void run() throws Exception {
+                    data.getEarliestItinerary("Strasbourg", "Marseille", from, plusDays(from, days));
+                }
+            });
+        }
+    }
+
+    /**
+     * Benchmarks the pricing of a fare-display page, i.e. of every class and
+     * period between a few stations: one ticket at a time, then in a batch.
+     *
+     * @param data the data access object to use
+     *
+     * @throws Exception if anything goes wrong
+     */
+    private static void quoteBenchmarks(final DataAccess data) throws Exception {
+        String[] stations = {"Paris", "Lyon", "Avignon", "Marseille"};
+        final List<FareRequest> requests = new ArrayList<FareRequest>();
+        for (String from : stations) {
+            for (String to : stations) {
+                for (Period period : Period.values()) {
+                    for (model.Class travelClass : model.Class.values()) {
+                        requests.add(new FareRequest(from, to, period, 2, travelClass));
+                    }
+                }
+            }
+        }
+        benchmark("buyTicket x " + requests.size(), data, new Operation() {
+            @Override
+            public void run() throws Exception {
+                for (FareRequest request : requests) {
+                    data.buyTicket(request.getDepartureStation(), request.getArrivalStation(),
+                        request.getTravelPeriod(), request.getPassengerCount(), request.getTravelClass());
+                }
+            }
+        });
+        benchmark("quoteTickets(" + requests.size() + ")", data, new Operation() {
+            @Override
+            public void run() throws Exception {
+                data.quoteTickets(requests);
+            }
+        });
+    }
+
+    /**
+     * Benchmarks the availability of a page of search results, one list of
+     * seats per journey against a single bulk count.
+     *
+     * @param data the data access object to use
+     *
+     * @throws Exception if anything goes wrong
+     */
+    private static void availabilityBenchmarks(final DataAccess data) throws Exception {
+        final Date from = dateFormat.parse("2017-10-01 00:00:00");
+        final List<Journey> journeys = data.getTrainTimes("Lyon", "Avignon", from, plusDays(from, 7));
+        benchmark("getAvailableSeats x " + journeys.size(), data, new Operation() {
+            @Override
+            public void run() throws Exception {
+                for (Journey journey : journeys) {
+                    data.getAvailableSeats(journey.getTrainNumber(), journey.getDepartureDate(),
+                        journey.getDepartureStation(), journey.getArrivalStation()).size();
+                }
+            }
+        });
+        benchmark("getAvailableSeatCounts(" + journeys.size() + ")", data, new Operation() {
+            @Override
+            public void run() throws Exception {
+                data.getAvailableSeatCounts(journeys, null);
+            }
+        });
+    }
+
+    //
+    // MAIN
+    //
+    /**
+     * Runs the benchmark program.
+     *
+     * @param args url login password
+     *
+     */
+    public static void main(String[] args) {
+
+        // check parameters
+        if (args.length != 3) {
+            System.err.println("usage: PerformanceTest <url> <login> <password>");
+            System.exit(1);
+        }
+
+        DataAccess data = null;
+        try {
+
+            // create the data access object and the database
+            data = new DataAccess(args[0], args[1], args[2]);
+            data.initDatabase();
+
+            System.out.println("Running search benchmarks...");
+            searchBenchmarks(data);
+            scalingBenchmarks(data);
+            itineraryBenchmarks(data);
+            quoteBenchmarks(data);
+            availabilityBenchmarks(data);
+
+            System.out.println("Statistics: " + data.getStatistics());
+        } catch (Exception e) {
+
+            System.err.println("benchmark aborted: " + e);
+            e.printStackTrace();
+
+        } finally {
+
+            if (data != null) {
+                try {
+                    data.close();
+                } catch (Exception e) {
+                    System.err.println("unexpected exception: " + e);
+                }
+            }
+
+        }
+    }
+}
@@ -18,6 +18,7 @@ public class SimpleTest {
     // CONSTANTS
     //
     private static final int MAX_CUSTOMERS = 5;
+    private static final int POOL_SIZE = 3;
     private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
     //
@@ -204,6 +205,23 @@ public class SimpleTest {
                 e.join();
             }
 
+            // execute the multi-users tests again, all the users sharing a single pooled data access object
+            System.out.println("Running pooled multi-users tests...");
+            DataAccess pooled = new DataAccess(args[0], args[1], args[2], POOL_SIZE);
+            datas.add(pooled);
+            emulators.clear();
+            for (int i = 0; i < MAX_CUSTOMERS; i++) {
+                UserEmulator emulator = new UserEmulator(pooled, "pooled user#" + i);
+                emulators.add(emulator);
+                emulator.start();
+            }
+
+            // wait for the test to complete
+            for (UserEmulator e : emulators) {
+                e.join();
+            }
+            System.out.println("Pool statistics: " + pooled.getStatistics());
+
             // you may add some tests here:
             // TODO
         } catch (Exception e) {
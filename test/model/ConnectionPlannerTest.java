@@ -0,0 +1,150 @@
+package model;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks the itineraries of a {@link ConnectionPlanner} over a few hand-made
+ * timetables of a single day: a direct train against a faster route with one
+ * transfer, a transfer shorter than the minimum transfer time, and a bound of
+ * no transfer. Everything runs in memory: no database is needed.
+ * <p>
+ * It lives in the test source root, in this package because the planner and
+ * the timetables are not public.
+ */
+public class ConnectionPlannerTest {
+
+    //
+    // CONSTANTS
+    //
+    private static final String PERIOD = "bleue";
+    private static final long DAY = LocalDate.of(2017, 10, 2).toEpochDay();
+    private static final int TRANSFER_SECONDS = 10 * 60;
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    //
+    // CLASS FIELDS
+    //
+    private static int testTotal = 0;
+    private static int testOK = 0;
+
+    //
+    // HELPER METHODS
+    //
+    /**
+     * Returns a timetable of the specified train leaving once a day.
+     *
+     * @param train the train number
+     * @param departure the departure time, as "HH:MM"
+     * @param stations the served stations
+     * @param minutes the time to reach each station, in minutes
+     *
+     * @return the timetable
+     */
+    private static TrainTimetable train(int train, String departure, String[] stations, int... minutes) {
+        int[] offsets = new int[minutes.length];
+        for (int i = 0; i < minutes.length; i++) {
+            offsets[i] = minutes[i] * 60;
+        }
+        return new TrainTimetable(train, PERIOD, stations, offsets, new int[] {secondOfDay(departure)});
+    }
+
+    private static int secondOfDay(String time) {
+        String[] parts = time.split(":");
+        return Integer.parseInt(parts[0]) * 3600 + Integer.parseInt(parts[1]) * 60;
+    }
+
+    private static long at(String time) {
+        return TrainTimetable.departureMillis(DAY, secondOfDay(time), ZONE);
+    }
+
+    /**
+     * Plans the itineraries from A to C during the day over the specified
+     * timetables.
+     *
+     * @param maxTransfers the maximum number of transfers
+     * @param timetables the timetables
+     *
+     * @return the itineraries
+     */
+    private static List<Itinerary> plan(int maxTransfers, TrainTimetable... timetables) {
+        List<long[]> ranges = new ArrayList<long[]>();
+        ranges.add(new long[] {DAY, DAY});
+        PeriodCalendar calendar = PeriodCalendar.of(ranges, Collections.singletonList(PERIOD), Long.MAX_VALUE / 2);
+        ConnectionPlanner planner = new ConnectionPlanner(Arrays.asList(timetables), calendar, DAY, DAY,
+            TRANSFER_SECONDS);
+        return planner.itineraries("A", "C", at("00:00"), at("23:59"), maxTransfers);
+    }
+
+    /**
+     * Checks that a leg is the specified train between the specified stations
+     * and times.
+     */
+    private static boolean isLeg(Journey leg, int train, String from, String to, String departure, String arrival) {
+        return leg.getTrainNumber() == train
+            && leg.getDepartureStation().equals(from)
+            && leg.getArrivalStation().equals(to)
+            && leg.getDepartureDate().getTime() == at(departure)
+            && leg.getArrivalDate().getTime() == at(arrival);
+    }
+
+    private static void check(String name, boolean ok, List<Itinerary> itineraries) {
+        testTotal++;
+        if (ok) {
+            testOK++;
+            System.out.println(name + ": ok");
+        } else {
+            System.out.println(name + ": FAILED " + itineraries);
+        }
+    }
+
+    //
+    // MAIN
+    //
+    /**
+     * Runs the checks and prints their results.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        // a slow direct train, and a faster route changing trains at B with 15 minutes to spare
+        TrainTimetable direct = train(1, "08:00", new String[] {"A", "X", "C"}, 0, 60, 180);
+        TrainTimetable first = train(2, "08:00", new String[] {"A", "B"}, 0, 30);
+        TrainTimetable second = train(3, "08:45", new String[] {"B", "C"}, 0, 30);
+        // the same second leg, leaving 5 minutes only after the arrival at B
+        TrainTimetable tight = train(4, "08:35", new String[] {"B", "C"}, 0, 30);
+
+        List<Itinerary> itineraries = plan(1, direct, first, second);
+        check("direct train vs faster transfer", itineraries.size() == 2
+            && itineraries.get(0).getTransferCount() == 0
+            && itineraries.get(0).getLegs().size() == 1
+            && isLeg(itineraries.get(0).getLegs().get(0), 1, "A", "C", "08:00", "11:00")
+            && itineraries.get(1).getTransferCount() == 1
+            && itineraries.get(1).getLegs().size() == 2
+            && isLeg(itineraries.get(1).getLegs().get(0), 2, "A", "B", "08:00", "08:30")
+            && isLeg(itineraries.get(1).getLegs().get(1), 3, "B", "C", "08:45", "09:15"), itineraries);
+
+        itineraries = plan(1, direct, first, tight);
+        check("transfer shorter than the minimum", itineraries.size() == 1
+            && itineraries.get(0).getLegs().size() == 1
+            && isLeg(itineraries.get(0).getLegs().get(0), 1, "A", "C", "08:00", "11:00"), itineraries);
+
+        itineraries = plan(0, direct, first, second);
+        check("no transfer allowed", itineraries.size() == 1
+            && itineraries.get(0).getLegs().size() == 1
+            && isLeg(itineraries.get(0).getLegs().get(0), 1, "A", "C", "08:00", "11:00"), itineraries);
+
+        itineraries = plan(1, first, tight);
+        check("no itinerary", itineraries.isEmpty(), itineraries);
+
+        System.out.println("test results: total=" + testTotal + ", ok=" + testOK);
+        if (testOK != testTotal) {
+            System.exit(1);
+        }
+    }
+
+}
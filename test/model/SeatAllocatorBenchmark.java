@@ -0,0 +1,114 @@
+package model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Measures the time it takes each {@link SeatAllocation} to choose the seats
+ * of groups of 1 to 20 passengers on an almost fully booked train. Everything
+ * runs in memory: no database is needed.
+ * <p>
+ * It lives in the test source root, in this package because the allocators
+ * and the inventories are not public, so that it does not ship with the
+ * library.
+ */
+public class SeatAllocatorBenchmark {
+
+    //
+    // CONSTANTS
+    //
+    private static final int CAR_COUNT = 12;
+    private static final int SEATS_PER_CAR = 80;
+    private static final int STATION_COUNT = 10;
+    private static final int BOOKING_COUNT = 2500;
+    private static final int WARMUP_RUNS = 2000;
+    private static final int MEASURED_RUNS = 20000;
+
+    //
+    // METHODS
+    //
+    /**
+     * Builds a train of {@value #CAR_COUNT} cars where most seats are booked on
+     * some segments, by random bookings.
+     *
+     * @param random the random generator
+     *
+     * @return the inventory of the train
+     */
+    private static SeatInventory loadedTrain(Random random) {
+        String[] stations = new String[STATION_COUNT];
+        int[] ranks = new int[STATION_COUNT - 1];
+        double[] speeds = new double[ranks.length];
+        int[] lengths = new int[ranks.length];
+        for (int i = 0; i < stations.length; i++) {
+            stations[i] = "S" + i;
+        }
+        for (int i = 0; i < ranks.length; i++) {
+            ranks[i] = i + 1;
+            speeds[i] = 200;
+            lengths[i] = 50;
+        }
+        TrainRoute route = new TrainRoute(1, stations, ranks, speeds, lengths, Arrays.asList("bleue"));
+
+        int[] cars = new int[CAR_COUNT];
+        String[] classes = new String[CAR_COUNT];
+        int[] firstSeats = new int[CAR_COUNT];
+        int[] seatCounts = new int[CAR_COUNT];
+        for (int i = 0; i < CAR_COUNT; i++) {
+            cars[i] = i + 1;
+            classes[i] = (i < CAR_COUNT / 4) ? "premiere" : "seconde";
+            firstSeats[i] = 1;
+            seatCounts[i] = SEATS_PER_CAR;
+        }
+        SeatLayout layout = new SeatLayout(1, "bleue", cars, classes, firstSeats, seatCounts, Long.MAX_VALUE / 2);
+
+        SeatInventory inventory = new SeatInventory(route, layout);
+        for (int i = 0; i < BOOKING_COUNT; i++) {
+            int from = random.nextInt(STATION_COUNT - 1);
+            int to = from + 1 + random.nextInt(STATION_COUNT - 1 - from);
+            inventory.occupy(1 + random.nextInt(CAR_COUNT), 1 + random.nextInt(SEATS_PER_CAR), stations[from], stations[to]);
+        }
+        return inventory;
+    }
+
+    /**
+     * Runs the benchmark and prints the mean allocation time of each strategy
+     * and group size.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        SeatInventory inventory = loadedTrain(new Random(42));
+        int from = 2;
+        int to = 7;
+        BitSet available = inventory.free("S" + from, "S" + to, "seconde");
+        System.out.println("available seats: " + available.cardinality() + " / " + inventory.getLayout().getSeatCount());
+
+        for (SeatAllocation allocation : SeatAllocation.values()) {
+            SeatAllocator allocator = SeatAllocator.of(allocation);
+            StringBuilder line = new StringBuilder(String.format("%-10s", allocation));
+            for (int count = 1; count <= 20; count++) {
+                BitSet seats = null;
+                for (int i = 0; i < WARMUP_RUNS; i++) {
+                    seats = allocator.allocate(inventory, from, to, available, count);
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < MEASURED_RUNS; i++) {
+                    seats = allocator.allocate(inventory, from, to, available, count);
+                }
+                long nanos = (System.nanoTime() - start) / MEASURED_RUNS;
+
+                // the allocation must be made of available seats only
+                BitSet unavailable = (BitSet) seats.clone();
+                unavailable.andNot(available);
+                if (seats.cardinality() != count || !unavailable.isEmpty()) {
+                    throw new IllegalStateException(allocation + " chose wrong seats for " + count + ": " + seats);
+                }
+                line.append(String.format(" %2d:%6dns", count, nanos));
+            }
+            System.out.println(line);
+        }
+    }
+
+}